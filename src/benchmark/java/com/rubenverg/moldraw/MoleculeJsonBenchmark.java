@@ -0,0 +1,79 @@
+package com.rubenverg.moldraw;
+
+import net.minecraftforge.data.event.GatherDataEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.common.Mod;
+
+import com.google.gson.Gson;
+import com.rubenverg.moldraw.data.MoleculesData;
+import com.rubenverg.moldraw.molecule.Molecule;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 分子 JSON 解析基准：在数据生成的全部分子上比较树形解析（{@link MolDraw#treeGson}）
+ * 与流式解析（{@link MolDraw#gson}），并校验两者结果一致。
+ * 只在开发环境的 {@code runBenchmark} 数据生成运行中执行，不打包进模组。
+ */
+@Mod.EventBusSubscriber(modid = MolDraw.MOD_ID, bus = Mod.EventBusSubscriber.Bus.MOD)
+public final class MoleculeJsonBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private MoleculeJsonBenchmark() {}
+
+    @SubscribeEvent
+    public static void gatherData(GatherDataEvent event) {
+        // 材料此时已全部注册，与数据生成使用同一份分子
+        if (Boolean.getBoolean("moldraw.benchmark")) run();
+    }
+
+    public static String run() {
+        final List<String> files = MoleculesData.molecules().values().stream()
+                .map(molecule -> MolDraw.treeGson.toJson(molecule, Molecule.class))
+                .toList();
+        final long bytes = files.stream().mapToLong(file -> file.getBytes(StandardCharsets.UTF_8).length).sum();
+
+        int mismatches = 0;
+        for (final var file : files) {
+            final var tree = MolDraw.treeGson.fromJson(file, Molecule.class);
+            final var stream = MolDraw.gson.fromJson(file, Molecule.class);
+            if (!MolDraw.treeGson.toJson(tree, Molecule.class).equals(MolDraw.treeGson.toJson(stream, Molecule.class)))
+                mismatches++;
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            parseAll(MolDraw.treeGson, files);
+            parseAll(MolDraw.gson, files);
+        }
+        // 交替测量两条路径，减少 JIT 与 GC 带来的偏差
+        long treeNanos = 0, streamNanos = 0, checksum = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long t0 = System.nanoTime();
+            checksum += parseAll(MolDraw.treeGson, files);
+            long t1 = System.nanoTime();
+            checksum += parseAll(MolDraw.gson, files);
+            long t2 = System.nanoTime();
+            treeNanos += t1 - t0;
+            streamNanos += t2 - t1;
+        }
+
+        final double treeMs = treeNanos / 1_000_000d / MEASURED_ROUNDS;
+        final double streamMs = streamNanos / 1_000_000d / MEASURED_ROUNDS;
+        final var result = ("Parsed %d molecules (%d KiB) over %d rounds: tree %.2f ms/round, " +
+                "streaming %.2f ms/round (%.2fx), %d mismatches").formatted(files.size(), bytes / 1024,
+                        MEASURED_ROUNDS, treeMs, streamMs, treeMs / streamMs, mismatches);
+        MolDraw.LOGGER.info("{} [checksum {}]", result, checksum);
+        return result;
+    }
+
+    private static int parseAll(Gson gson, List<String> files) {
+        int contents = 0;
+        for (final var file : files) {
+            contents += gson.fromJson(file, Molecule.class).contents().size();
+        }
+        return contents;
+    }
+}
@@ -1,7 +1,13 @@
 package com.adsioho.gtm.compat.materialLookingup;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
 
 public final class MaterialHelper {
 
@@ -25,132 +31,160 @@ public final class MaterialHelper {
         }
     }
 
-    public static boolean isNull(Object material) {
-        if (material == null) {
-            logDebug("MaterialHelper.isNull: input is null");
-            return true;
+    private static final String[] NUMERIC_METHODS = {
+            "getAmount", "getStackSize", "getSize", "getSizeInUnits", "getQuantity", "getQty", "getCount"
+    };
+    private static final String[] NUMERIC_FIELDS = { "amount", "stackSize", "size", "quantity", "qty", "count" };
+    private static final String[] NAME_METHODS = {
+            "getName", "getUnlocalizedName", "getLocalizedName", "getDisplayName", "name", "getId"
+    };
+    private static final String[] NAME_FIELDS = { "name", "id", "unlocalizedName", "displayName", "localizedName" };
+
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    /**
+     * 某个具体类的判空方案：按原顺序排列的数值访问器与名称访问器，每个类只探测一次
+     */
+    private static final ClassValue<Plan> PLANS = new ClassValue<>() {
+
+        @Override
+        protected Plan computeValue(Class<?> cls) {
+            return Plan.compile(cls);
         }
+    };
 
-        logDebug("MaterialHelper.isNull: Starting analysis of object: " +
-                material.getClass().getName());
+    private record Accessor(String description, MethodHandle handle) {}
 
-        try {
-            Class<?> cls = material.getClass();
-
-            String[] numericMethods = {
-                    "getAmount", "getStackSize", "getSize", "getSizeInUnits", "getQuantity", "getQty", "getCount"
-            };
-            for (String methodName : numericMethods) {
-                try {
-                    Method m = cls.getMethod(methodName);
-                    Object val = m.invoke(material);
-                    if (val instanceof Number) {
-                        long longValue = ((Number) val).longValue();
-                        logDebug("MaterialHelper.isNull: Method " + methodName + " returned: " + longValue);
-                        if (longValue <= 0L) {
-                            logDebug(
-                                    "MaterialHelper.isNull: Method " + methodName + " returned <= 0, considering null");
-                            return true;
-                        }
-                    }
-                } catch (NoSuchMethodException ignored) {
-                    logDebug("MaterialHelper.isNull: Method " + methodName + " not found");
-                } catch (Throwable t) {
-                    logDebug("MaterialHelper.isNull: Error invoking method " + methodName + ": " + t.getMessage());
-                }
+    private record Plan(Accessor[] numeric, Accessor[] names) {
+
+        static Plan compile(Class<?> cls) {
+            final var lookup = MethodHandles.lookup();
+            final List<Accessor> numeric = new ArrayList<>();
+            final List<Accessor> names = new ArrayList<>();
+            for (String methodName : NUMERIC_METHODS) {
+                final var method = findMethod(cls, methodName);
+                if (method != null && mayBeNumber(method.getReturnType()))
+                    addMethod(lookup, numeric, method);
+            }
+            for (String fieldName : NUMERIC_FIELDS) {
+                final var field = findField(cls, fieldName);
+                if (field != null && mayBeNumber(field.getType()))
+                    addField(lookup, numeric, field);
+            }
+            for (String methodName : NAME_METHODS) {
+                final var method = findMethod(cls, methodName);
+                if (method != null) addMethod(lookup, names, method);
             }
+            for (String fieldName : NAME_FIELDS) {
+                final var field = findField(cls, fieldName);
+                if (field != null) addField(lookup, names, field);
+            }
+            logDebug("MaterialHelper: compiled plan for " + cls.getName() + ": " + numeric.size() +
+                    " numeric accessor(s), " + names.size() + " name accessor(s)");
+            return new Plan(numeric.toArray(Accessor[]::new), names.toArray(Accessor[]::new));
+        }
 
-            String[] numericFields = { "amount", "stackSize", "size", "quantity", "qty", "count" };
-            for (String fieldName : numericFields) {
-                try {
-                    Field f = cls.getDeclaredField(fieldName);
-                    f.setAccessible(true);
-                    Object val = f.get(material);
-                    if (val instanceof Number) {
-                        long longValue = ((Number) val).longValue();
-                        logDebug("MaterialHelper.isNull: Field " + fieldName + " value: " + longValue);
-                        if (longValue <= 0L) {
-                            logDebug("MaterialHelper.isNull: Field " + fieldName + " value <= 0, considering null");
-                            return true;
-                        }
-                    }
-                } catch (NoSuchFieldException ignored) {
-                    logDebug("MaterialHelper.isNull: Field " + fieldName + " not found");
-                } catch (Throwable t) {
-                    logDebug("MaterialHelper.isNull: Error accessing field " + fieldName + ": " + t.getMessage());
-                }
+        private static Method findMethod(Class<?> cls, String name) {
+            try {
+                return cls.getMethod(name);
+            } catch (Throwable t) {
+                return null;
             }
+        }
 
-            String[] nameMethods = {
-                    "getName", "getUnlocalizedName", "getLocalizedName", "getDisplayName", "name", "getId"
-            };
-            for (String methodName : nameMethods) {
-                try {
-                    Method m = cls.getMethod(methodName);
-                    Object val = m.invoke(material);
-                    logDebug("MaterialHelper.isNull: Method " + methodName + " returned: " +
-                            (val != null ? "'" + val.toString() + "'" : "null"));
-                    if (val == null) {
-                        logDebug("MaterialHelper.isNull: Method " + methodName + " returned null, considering null");
-                        return true;
-                    }
-                    String s = val.toString().trim();
-                    if (s.isEmpty()) {
-                        logDebug("MaterialHelper.isNull: Method " + methodName +
-                                " returned empty string, considering null");
-                        return true;
-                    }
-                    String lower = s.toLowerCase();
-                    if (lower.equals("null") || lower.equals("air") || lower.equals("unknown") ||
-                            lower.equals("empty")) {
-                        logDebug("MaterialHelper.isNull: Method " + methodName + " returned '" + lower +
-                                "', considering null");
-                        return true;
-                    }
-                } catch (NoSuchMethodException ignored) {
-                    logDebug("MaterialHelper.isNull: Method " + methodName + " not found");
-                } catch (Throwable t) {
-                    logDebug("MaterialHelper.isNull: Error invoking method " + methodName + ": " + t.getMessage());
-                }
+        private static Field findField(Class<?> cls, String name) {
+            try {
+                return cls.getDeclaredField(name);
+            } catch (Throwable t) {
+                return null;
             }
+        }
 
-            String[] nameFields = { "name", "id", "unlocalizedName", "displayName", "localizedName" };
-            for (String fieldName : nameFields) {
-                try {
-                    Field f = cls.getDeclaredField(fieldName);
-                    f.setAccessible(true);
-                    Object val = f.get(material);
-                    logDebug("MaterialHelper.isNull: Field " + fieldName + " value: " +
-                            (val != null ? "'" + val.toString() + "'" : "null"));
-                    if (val == null) {
-                        logDebug("MaterialHelper.isNull: Field " + fieldName + " is null, considering null");
-                        return true;
-                    }
-                    String s = val.toString().trim();
-                    if (s.isEmpty()) {
-                        logDebug("MaterialHelper.isNull: Field " + fieldName + " is empty, considering null");
-                        return true;
-                    }
-                    String lower = s.toLowerCase();
-                    if (lower.equals("null") || lower.equals("air") || lower.equals("unknown") ||
-                            lower.equals("empty")) {
-                        logDebug("MaterialHelper.isNull: Field " + fieldName + " is '" + lower + "', considering null");
-                        return true;
-                    }
-                } catch (NoSuchFieldException ignored) {
-                    logDebug("MaterialHelper.isNull: Field " + fieldName + " not found");
-                } catch (Throwable t) {
-                    logDebug("MaterialHelper.isNull: Error accessing field " + fieldName + ": " + t.getMessage());
-                }
+        /**
+         * 返回值是否可能是 {@link Number}，不可能的访问器在原逻辑中也从不生效
+         */
+        private static boolean mayBeNumber(Class<?> type) {
+            if (type.isPrimitive()) return type != boolean.class && type != char.class && type != void.class;
+            return Number.class.isAssignableFrom(type) || type.isAssignableFrom(Number.class) || type.isInterface();
+        }
+
+        private static void addMethod(MethodHandles.Lookup lookup, List<Accessor> dest, Method method) {
+            try {
+                var handle = lookup.unreflect(method);
+                if (Modifier.isStatic(method.getModifiers()))
+                    handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                dest.add(new Accessor("Method " + method.getName(), handle.asType(ACCESSOR_TYPE)));
+            } catch (Throwable t) {
+                logDebug("MaterialHelper: Method " + method.getName() + " is not accessible: " + t.getMessage());
             }
+        }
 
-            logDebug("MaterialHelper.isNull: Object passed all null checks, considering non-null");
-            return false;
+        private static void addField(MethodHandles.Lookup lookup, List<Accessor> dest, Field field) {
+            try {
+                field.setAccessible(true);
+                var handle = lookup.unreflectGetter(field);
+                if (Modifier.isStatic(field.getModifiers()))
+                    handle = MethodHandles.dropArguments(handle, 0, Object.class);
+                dest.add(new Accessor("Field " + field.getName(), handle.asType(ACCESSOR_TYPE)));
+            } catch (Throwable t) {
+                logDebug("MaterialHelper: Field " + field.getName() + " is not accessible: " + t.getMessage());
+            }
+        }
+    }
+
+    public static boolean isNull(Object material) {
+        if (material == null) {
+            logDebug("MaterialHelper.isNull: input is null");
+            return true;
+        }
 
+        final Plan plan;
+        try {
+            plan = PLANS.get(material.getClass());
         } catch (Throwable t) {
             logDebug("MaterialHelper.isNull: Exception during analysis: " + t.getMessage());
             logDebug("MaterialHelper.isNull: Falling back to false (non-null)");
             return false;
         }
+
+        for (final var accessor : plan.numeric) {
+            try {
+                final Object val = (Object) accessor.handle.invokeExact(material);
+                if (val instanceof Number number && number.longValue() <= 0L) {
+                    if (debugLogger != null)
+                        logDebug("MaterialHelper.isNull: " + accessor.description + " returned " + number +
+                                ", considering null");
+                    return true;
+                }
+            } catch (Throwable t) {
+                if (debugLogger != null)
+                    logDebug("MaterialHelper.isNull: Error reading " + accessor.description + ": " + t.getMessage());
+            }
+        }
+
+        for (final var accessor : plan.names) {
+            try {
+                final Object val = (Object) accessor.handle.invokeExact(material);
+                if (isNullName(val)) {
+                    if (debugLogger != null)
+                        logDebug("MaterialHelper.isNull: " + accessor.description + " returned " +
+                                (val != null ? "'" + val + "'" : "null") + ", considering null");
+                    return true;
+                }
+            } catch (Throwable t) {
+                if (debugLogger != null)
+                    logDebug("MaterialHelper.isNull: Error reading " + accessor.description + ": " + t.getMessage());
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isNullName(Object val) {
+        if (val == null) return true;
+        final String s = val.toString().trim();
+        if (s.isEmpty()) return true;
+        final String lower = s.toLowerCase();
+        return lower.equals("null") || lower.equals("air") || lower.equals("unknown") || lower.equals("empty");
     }
 }
@@ -4,14 +4,39 @@ import com.gregtechceu.gtceu.api.data.chemical.ChemicalHelper;
 import com.gregtechceu.gtceu.api.data.chemical.material.Material;
 import com.gregtechceu.gtceu.api.data.chemical.material.stack.MaterialStack;
 
+import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class CustomMaterialLookup {
 
     private CustomMaterialLookup() {}
 
+    // 按物品缓存的材料查找结果，空值表示该物品没有材料。材料由标签决定，标签或资源重载时清空
+    private static final Map<Item, Optional<Material>> ITEM_MATERIALS = new ConcurrentHashMap<>();
+
+    private static final ClassValue<Boolean> MACHINE_ITEM_CLASSES = new ClassValue<>() {
+
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.getName().contains("MetaMachineItem");
+        }
+    };
+
+    /**
+     * 是否为 GT 机器物品，按类缓存
+     */
+    public static boolean isMachineItem(Item item) {
+        return MACHINE_ITEM_CLASSES.get(item.getClass());
+    }
+
+    public static void invalidateCache() {
+        ITEM_MATERIALS.clear();
+    }
+
     private static boolean isMaterialNull(Material material) {
         return material == null;
     }
@@ -22,10 +47,24 @@ public final class CustomMaterialLookup {
         }
 
         // 过滤机器物品
-        if (stack.getItem().getClass().getName().contains("MetaMachineItem")) {
+        if (isMachineItem(stack.getItem())) {
             return Optional.empty();
         }
 
+        // 带 NBT 的物品材料可能取决于 NBT，不走缓存
+        if (stack.hasTag()) {
+            return lookup(stack);
+        }
+        final var cached = ITEM_MATERIALS.get(stack.getItem());
+        if (cached != null) {
+            return cached;
+        }
+        final var material = lookup(stack);
+        ITEM_MATERIALS.put(stack.getItem(), material);
+        return material;
+    }
+
+    private static Optional<Material> lookup(ItemStack stack) {
         try {
             MaterialStack materialStack = ChemicalHelper.getMaterial(stack);
             if (materialStack != null && !isMaterialNull(materialStack.material())) {
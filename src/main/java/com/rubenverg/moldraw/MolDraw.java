@@ -1,9 +1,7 @@
 package com.rubenverg.moldraw;
 
 import com.gregtechceu.gtceu.api.GTCEuAPI;
-import com.gregtechceu.gtceu.api.data.chemical.ChemicalHelper;
 import com.gregtechceu.gtceu.api.data.chemical.material.Material;
-import com.gregtechceu.gtceu.api.data.chemical.material.stack.MaterialStack;
 import com.gregtechceu.gtceu.utils.GTUtil;
 
 import net.minecraft.MethodsReturnNonnullByDefault;
@@ -13,15 +11,10 @@ import net.minecraft.commands.Commands;
 import net.minecraft.data.CachedOutput;
 import net.minecraft.data.DataProvider;
 import net.minecraft.data.PackOutput;
-import net.minecraft.network.chat.Component;
-import net.minecraft.network.chat.FormattedText;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.packs.resources.ResourceManager;
 import net.minecraft.server.packs.resources.SimplePreparableReloadListener;
-import net.minecraft.util.Unit;
 import net.minecraft.util.profiling.ProfilerFiller;
-import net.minecraft.world.inventory.tooltip.TooltipComponent;
-import net.minecraft.world.item.BucketItem;
 import net.minecraft.world.item.ItemStack;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.client.event.RegisterClientReloadListenersEvent;
@@ -30,6 +23,8 @@ import net.minecraftforge.client.event.RenderTooltipEvent;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.data.event.GatherDataEvent;
 import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.DistExecutor;
@@ -38,14 +33,17 @@ import net.minecraftforge.fml.event.lifecycle.FMLConstructModEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonSyntaxException;
 import com.mojang.brigadier.CommandDispatcher;
-import com.mojang.datafixers.util.Either;
 import com.rubenverg.moldraw.component.AlloyTooltipComponent;
+import com.rubenverg.moldraw.component.MoleculeRenderCache;
+import com.rubenverg.moldraw.component.MoleculeTextureCache;
 import com.rubenverg.moldraw.component.MoleculeTooltipComponent;
+import com.rubenverg.moldraw.component.SpinClock;
 import com.rubenverg.moldraw.data.AlloysData;
 import com.rubenverg.moldraw.data.MoleculesData;
 import com.rubenverg.moldraw.molecule.*;
@@ -56,11 +54,9 @@ import org.jetbrains.annotations.Nullable;
 import oshi.util.tuples.Pair;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.IntStream;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -82,9 +78,23 @@ public class MolDraw {
 
             MinecraftForge.EVENT_BUS.addListener(this::tooltipGatherComponents);
             MinecraftForge.EVENT_BUS.addListener(this::registerCommands);
+            MinecraftForge.EVENT_BUS.addListener(this::tagsUpdated);
+            MinecraftForge.EVENT_BUS.addListener(this::renderTick);
         });
     }
 
+    @SubscribeEvent
+    public void renderTick(TickEvent.RenderTickEvent event) {
+        if (event.phase == TickEvent.Phase.START) SpinClock.tick();
+    }
+
+    @SubscribeEvent
+    public void tagsUpdated(TagsUpdatedEvent event) {
+        // 材料归属由物品标签决定
+        CustomMaterialLookup.invalidateCache();
+        TooltipDecisions.invalidate();
+    }
+
     @SubscribeEvent
     public void registerCommands(RegisterCommandsEvent event) {
         CommandDispatcher<CommandSourceStack> dispatcher = event.getDispatcher();
@@ -99,19 +109,32 @@ public class MolDraw {
                         })));
     }
 
-    public static final Gson gson = new GsonBuilder()
-            .registerTypeAdapter(Molecule.class, Molecule.Json.INSTANCE)
-            .registerTypeAdapter(Element.class, Element.Json.INSTANCE)
-            .registerTypeAdapter(Element.Color.class, Element.Color.Json.INSTANCE)
-            .registerTypeAdapter(Element.Counted.class, Element.Counted.Json.INSTANCE)
-            .registerTypeAdapter(Atom.class, Atom.Json.INSTANCE)
-            .registerTypeAdapter(Bond.class, Bond.Json.INSTANCE)
-            .registerTypeAdapter(Bond.Line.class, Bond.Line.Json.INSTANCE)
-            .registerTypeAdapter(Parens.class, Parens.Json.INSTANCE)
-            .registerTypeAdapter(CircleTransformation.class, CircleTransformation.Json.INSTANCE)
+    /**
+     * 仅使用树形适配器，供基准测试对照
+     */
+    public static final Gson treeGson = registerTreeAdapters(new GsonBuilder())
+            .setPrettyPrinting()
+            .create();
+
+    // 流式适配器注册在树形适配器之后，读取走流式路径，写出委托给树形序列化器
+    public static final Gson gson = registerTreeAdapters(new GsonBuilder())
+            .registerTypeAdapterFactory(MoleculeStreamAdapters.INSTANCE)
             .setPrettyPrinting()
             .create();
 
+    private static GsonBuilder registerTreeAdapters(GsonBuilder builder) {
+        return builder
+                .registerTypeAdapter(Molecule.class, Molecule.Json.INSTANCE)
+                .registerTypeAdapter(Element.class, Element.Json.INSTANCE)
+                .registerTypeAdapter(Element.Color.class, Element.Color.Json.INSTANCE)
+                .registerTypeAdapter(Element.Counted.class, Element.Counted.Json.INSTANCE)
+                .registerTypeAdapter(Atom.class, Atom.Json.INSTANCE)
+                .registerTypeAdapter(Bond.class, Bond.Json.INSTANCE)
+                .registerTypeAdapter(Bond.Line.class, Bond.Line.Json.INSTANCE)
+                .registerTypeAdapter(Parens.class, Parens.Json.INSTANCE)
+                .registerTypeAdapter(CircleTransformation.class, CircleTransformation.Json.INSTANCE);
+    }
+
     public void modConstruct(FMLConstructModEvent event) {
         event.enqueueWork(MolDrawConfig::init);
     }
@@ -130,7 +153,8 @@ public class MolDraw {
 
                     @Override
                     public @NotNull CompletableFuture<?> run(@NotNull CachedOutput cachedOutput) {
-                        for (final var entry : MoleculesData.molecules().entrySet()) {
+                        final var molecules = MoleculesData.molecules();
+                        for (final var entry : molecules.entrySet()) {
                             final var json = gson.toJson(entry.getValue(), Molecule.class);
                             try {
                                 cachedOutput.writeIfNeeded(moleculesPathProvider.json(entry.getKey()),
@@ -139,6 +163,15 @@ public class MolDraw {
                                 throw new RuntimeException(e);
                             }
                         }
+                        try {
+                            final var bundle = MoleculeBundle.write(molecules);
+                            cachedOutput.writeIfNeeded(output.getOutputFolder(PackOutput.Target.RESOURCE_PACK)
+                                    .resolve(MoleculeBundle.LOCATION.getNamespace())
+                                    .resolve(MoleculeBundle.LOCATION.getPath()),
+                                    bundle, HashCode.fromInt(Arrays.hashCode(bundle)));
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
                         for (final var entry : AlloysData.alloys().entrySet()) {
                             final var json = gson.toJson(AlloysData.write(entry.getValue()));
                             try {
@@ -165,93 +198,130 @@ public class MolDraw {
         event.register(AlloyTooltipComponent.class, AlloyTooltipComponent.ClientAlloyTooltipComponent::new);
     }
 
-    private static final Map<Material, Molecule> molecules = new HashMap<>();
     private static final Map<Material, Optional<List<Pair<Material, Long>>>> alloys = new HashMap<>();
+    private static volatile Map<ResourceLocation, ResourceFingerprint> alloyFingerprints = Map.of();
+    // 上次重载时字体资源的指纹，只在 apply 中读写
+    private static long fontFingerprint;
+
+    /**
+     * 字体定义与字形纹理的指纹：位置、提供它们的资源包以及字体定义的内容
+     */
+    private static long fontFingerprint(ResourceManager resourceManager) {
+        final var hasher = Hashing.murmur3_128().newHasher();
+        for (final var prefix : List.of("font", "textures/font")) {
+            for (final var entry : new TreeMap<>(resourceManager.listResourceStacks(prefix, path -> true))
+                    .entrySet()) {
+                hasher.putString(entry.getKey().toString(), StandardCharsets.UTF_8);
+                for (final var resource : entry.getValue()) {
+                    hasher.putString(resource.sourcePackId(), StandardCharsets.UTF_8);
+                    if (!entry.getKey().getPath().endsWith(".json")) continue;
+                    try (final var stream = resource.open()) {
+                        hasher.putBytes(stream.readAllBytes());
+                    } catch (IOException e) {
+                        hasher.putInt(-1);
+                    }
+                }
+            }
+        }
+        return hasher.hash().asLong();
+    }
+
+    private record AlloyReload(Map<Material, Optional<List<Pair<Material, Long>>>> alloys,
+                               Map<ResourceLocation, ResourceFingerprint> fingerprints, Set<Material> changed) {}
 
     public void registerClientReloadListeners(RegisterClientReloadListenersEvent event) {
-        event.registerReloadListener(new SimplePreparableReloadListener<Unit>() {
+        event.registerReloadListener(new SimplePreparableReloadListener<Long>() {
 
             @MethodsReturnNonnullByDefault
             @ParametersAreNonnullByDefault
             @Override
-            protected Unit prepare(ResourceManager resourceManager, ProfilerFiller profilerFiller) {
-                return Unit.INSTANCE;
+            protected Long prepare(ResourceManager resourceManager, ProfilerFiller profilerFiller) {
+                return fontFingerprint(resourceManager);
             }
 
             @MethodsReturnNonnullByDefault
             @ParametersAreNonnullByDefault
             @Override
-            protected void apply(Unit unit, ResourceManager resourceManager, ProfilerFiller profilerFiller) {
-                MoleculeColorize.invalidateColorCache();
+            protected void apply(Long fonts, ResourceManager resourceManager, ProfilerFiller profilerFiller) {
+                // 颜色输入只有流体纹理随资源变化，平均色就绪后只失效颜色变化的材料
+                MoleculeColorize.warmFluidColors(resourceManager);
+                CustomMaterialLookup.invalidateCache();
+                // 字形宽度只在字体资源变化时改变，此时才丢弃所有分子排版、图像、纹理与合金文本布局；
+                // 其余情况下只有分子注册表丢弃的分子失效其渲染缓存
+                if (fonts != fontFingerprint) {
+                    fontFingerprint = fonts;
+                    Element.Counted.invalidateWidths();
+                    MoleculeRenderCache.clear();
+                    MoleculeTextureCache.clear();
+                    AlloyTooltipComponent.invalidateAlloyRenderCache();
+                }
+                // 提示文本随语言变化
+                TooltipDecisions.invalidate();
             }
         });
 
         event.registerReloadListener(
 
-                new SimplePreparableReloadListener<Map<Material, Molecule>>() {
+                new SimplePreparableReloadListener<Map<Material, MoleculeRegistry.Entry>>() {
 
                     @MethodsReturnNonnullByDefault
                     @ParametersAreNonnullByDefault
                     @Override
-                    protected Map<Material, Molecule> prepare(ResourceManager resourceManager,
+                    protected Map<Material, MoleculeRegistry.Entry> prepare(ResourceManager resourceManager,
                                                               ProfilerFiller profilerFiller) {
-                        final Map<Material, Molecule> molecules = new HashMap<>();
-                        for (final var id : resourceManager
-                                .listResources("molecules", path -> path.toString().endsWith(".json")).keySet()) {
-                            try (final var stream = resourceManager.open(id)) {
-                                final var file = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
-                                final var material = GTCEuAPI.materialManager
-                                        .getMaterial(id.toString().replace(".json", "").replace("molecules/", ""));
-                                if (Objects.isNull(material)) {
-                                    continue;
-                                }
-                                final var molecule = gson.fromJson(file, Molecule.class);
-                                molecules.put(material, molecule);
-                            } catch (IOException | JsonSyntaxException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                        return molecules;
+                        return MoleculeLoader.load(resourceManager);
                     }
 
                     @MethodsReturnNonnullByDefault
                     @ParametersAreNonnullByDefault
                     @Override
-                    protected void apply(Map<Material, Molecule> prepareResult, ResourceManager resourceManager,
-                                         ProfilerFiller profilerFiller) {
-                        molecules.clear();
-                        molecules.putAll(prepareResult);
+                    protected void apply(Map<Material, MoleculeRegistry.Entry> prepareResult,
+                                         ResourceManager resourceManager, ProfilerFiller profilerFiller) {
+                        MoleculeRegistry.replace(prepareResult);
+                        MoleculeRegistry.indexMaterials(GTCEuAPI.materialManager.getRegisteredMaterials());
+                        TooltipDecisions.invalidate();
 
-                        // 调试信息：打印加载的分子
+                        // 调试信息：打印索引的分子（此时尚未解码）
                         if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                            MolDraw.LOGGER.info("=== Loaded Molecules ===");
-                            MolDraw.LOGGER.info("Total loaded: {}", prepareResult.size());
-                            for (Map.Entry<Material, Molecule> entry : prepareResult.entrySet()) {
-                                MolDraw.LOGGER.info("  {} -> {}",
-                                        entry.getKey().getName(),
-                                        entry.getValue() != null ? "Molecule loaded" : "null");
+                            MolDraw.LOGGER.info("=== Indexed Molecules ===");
+                            MolDraw.LOGGER.info("Total indexed: {}", prepareResult.size());
+                            for (Material material : prepareResult.keySet()) {
+                                MolDraw.LOGGER.info("  {}", material.getName());
                             }
                         }
                     }
                 });
         event.registerReloadListener(
-                new SimplePreparableReloadListener<Map<Material, Optional<List<Pair<Material, Long>>>>>() {
+                new SimplePreparableReloadListener<AlloyReload>() {
 
                     @MethodsReturnNonnullByDefault
                     @ParametersAreNonnullByDefault
                     @Override
-                    protected Map<Material, Optional<List<Pair<Material, Long>>>> prepare(ResourceManager resourceManager,
-                                                                                          ProfilerFiller profilerFiller) {
+                    protected AlloyReload prepare(ResourceManager resourceManager, ProfilerFiller profilerFiller) {
+                        // 只在 apply 中写入，此处读取上一次重载的结果是安全的
+                        final var previousFingerprints = alloyFingerprints;
                         final Map<Material, Optional<List<Pair<Material, Long>>>> alloys = new HashMap<>();
-                        for (final var id : resourceManager
-                                .listResources("alloys", path -> path.toString().endsWith(".json")).keySet()) {
-                            try (final var stream = resourceManager.open(id)) {
-                                final var file = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+                        final Map<ResourceLocation, ResourceFingerprint> fingerprints = new HashMap<>();
+                        final Set<Material> changed = new HashSet<>();
+                        for (final var entry : resourceManager
+                                .listResources("alloys", path -> path.toString().endsWith(".json")).entrySet()) {
+                            final var id = entry.getKey();
+                            try (final var stream = entry.getValue().open()) {
+                                final var bytes = stream.readAllBytes();
                                 final var material = GTCEuAPI.materialManager
                                         .getMaterial(id.toString().replace(".json", "").replace("alloys/", ""));
                                 if (Objects.isNull(material)) {
                                     continue;
                                 }
+                                final var fingerprint = ResourceFingerprint.of(entry.getValue(), bytes);
+                                fingerprints.put(id, fingerprint);
+                                if (fingerprint.equals(previousFingerprints.get(id)) &&
+                                        MolDraw.alloys.containsKey(material)) {
+                                    alloys.put(material, MolDraw.alloys.get(material));
+                                    continue;
+                                }
+                                changed.add(material);
+                                final var file = new String(bytes, StandardCharsets.UTF_8);
                                 final var alloy = AlloysData.read(gson.fromJson(file, JsonElement.class));
                                 if (alloy.isEmpty()) {
                                     alloys.put(material, Optional.empty());
@@ -268,21 +338,33 @@ public class MolDraw {
                                 throw new RuntimeException(e);
                             }
                         }
-                        return alloys;
+                        // 被删除的合金文件同样需要失效其渲染缓存
+                        for (final var material : MolDraw.alloys.keySet()) {
+                            if (!alloys.containsKey(material)) changed.add(material);
+                        }
+                        return new AlloyReload(alloys, fingerprints, changed);
                     }
 
                     @MethodsReturnNonnullByDefault
                     @ParametersAreNonnullByDefault
                     @Override
-                    protected void apply(Map<Material, Optional<List<Pair<Material, Long>>>> prepareResult,
-                                         ResourceManager resourceManager, ProfilerFiller profilerFiller) {
+                    protected void apply(AlloyReload reload, ResourceManager resourceManager,
+                                         ProfilerFiller profilerFiller) {
+                        final var prepareResult = reload.alloys();
                         alloys.clear();
                         alloys.putAll(prepareResult);
-                        AlloyTooltipComponent.invalidateComponentsCache();
+                        alloyFingerprints = reload.fingerprints();
+                        TooltipDecisions.invalidate();
+                        // 成分推导只依赖 GT 材料本身，与资源无关，无需随重载清空
+                        if (!reload.changed().isEmpty()) {
+                            AlloyTooltipComponent.invalidateAlloyRenderCache(reload.changed());
+                        }
                         AlloyTooltipComponent.precomputeAlloyRenderCache(prepareResult);
 
                         // 调试信息：打印加载的合金
                         if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
+                            MolDraw.LOGGER.info("Alloy reload: {} loaded, {} changed", prepareResult.size(),
+                                    reload.changed().size());
                             MolDraw.LOGGER.info("=== Loaded Alloys ===");
                             MolDraw.LOGGER.info("Total loaded: {}", prepareResult.size());
                             for (Map.Entry<Material, Optional<List<Pair<Material, Long>>>> entry : prepareResult
@@ -296,68 +378,6 @@ public class MolDraw {
                 });
     }
 
-    @Nullable
-    private static ResourceLocation resolveMaterialId(Material material) {
-        if (material == null) {
-            return null;
-        }
-
-        try {
-            String s = material.toString();
-            if (s != null && !s.isEmpty()) {
-                ResourceLocation rlFromString = new ResourceLocation(s);
-                if (!"minecraft".equals(rlFromString.getNamespace())) {
-                    return rlFromString;
-                }
-            }
-        } catch (Exception ignored) {}
-
-        Object nameObj = material.getName();
-        if (nameObj instanceof ResourceLocation) {
-            return (ResourceLocation) nameObj;
-        }
-
-        if (nameObj != null) {
-            String s = nameObj.toString();
-            try {
-                return new ResourceLocation(s);
-            } catch (Exception ignored) {}
-        }
-
-        try {
-            Class<?> cls = material.getClass();
-            try {
-                Field infoField = cls.getDeclaredField("materialInfo");
-                infoField.setAccessible(true);
-                Object info = infoField.get(material);
-                if (info != null) {
-                    Class<?> infoCls = info.getClass();
-                    Field rlField;
-                    try {
-                        rlField = infoCls.getDeclaredField("resourceLocation");
-                    } catch (NoSuchFieldException e) {
-                        rlField = infoCls.getDeclaredField("id");
-                    }
-                    rlField.setAccessible(true);
-                    Object val = rlField.get(info);
-                    if (val instanceof ResourceLocation) {
-                        return (ResourceLocation) val;
-                    }
-                    if (val != null) {
-                        try {
-                            return new ResourceLocation(val.toString());
-                        } catch (Exception ignored) {}
-                    }
-                }
-            } catch (NoSuchFieldException ignored) {}
-        } catch (Exception e) {
-            if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                LOGGER.debug("Failed to resolve material id for {}", material, e);
-            }
-        }
-        return null;
-    }
-
     public static @Nullable Molecule getMolecule(Material material) {
         if (material == null) {
             return null;
@@ -370,7 +390,7 @@ public class MolDraw {
                     material.getClass().getName());
         }
 
-        Molecule molecule = molecules.get(material);
+        Molecule molecule = MoleculeRegistry.get(material);
         if (molecule != null) {
             if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
                 LOGGER.info("getMolecule: found molecule in cache for {}", material);
@@ -378,26 +398,16 @@ public class MolDraw {
             return molecule;
         }
 
-        ResourceLocation materialId = resolveMaterialId(material);
-        if (materialId == null) {
-            if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                LOGGER.info("getMolecule: resolveMaterialId returned null for {}", material);
-            }
+        if (MoleculeRegistry.isMissing(material)) {
             return null;
         }
 
-        if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-            LOGGER.info("getMolecule: resolved materialId={} for {}", materialId, material);
-        }
-
-        String name = materialId.toString();
-        Material canonical = GTCEuAPI.materialManager.getMaterial(name);
-        if (canonical != null) {
-            Molecule canonicalMolecule = molecules.get(canonical);
+        // 重载时已索引所有资源包与模组中的分子，这里只需把别名实例映射到同 id 的已注册材料
+        Material canonical = MoleculeRegistry.canonical(material);
+        if (canonical != material) {
+            Molecule canonicalMolecule = MoleculeRegistry.get(canonical);
             if (canonicalMolecule != null) {
-                if (canonical != material) {
-                    molecules.put(material, canonicalMolecule);
-                }
+                MoleculeRegistry.alias(material, canonical);
                 if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
                     LOGGER.info("getMolecule: using canonical material {} for {}", canonical, material);
                 }
@@ -405,63 +415,10 @@ public class MolDraw {
             }
         }
 
-        try {
-            ResourceLocation resourceId = new ResourceLocation(materialId.getNamespace(),
-                    "molecules/" + materialId.getPath() + ".json");
-            if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                LOGGER.info("getMolecule: trying resourceId={}", resourceId);
-            }
-            var resourceOpt = Minecraft.getInstance().getResourceManager().getResource(resourceId);
-            if (resourceOpt.isPresent()) {
-                if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                    LOGGER.info("getMolecule: resource {} is present", resourceId);
-                }
-                try (var stream = resourceOpt.get().open()) {
-                    var file = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
-                    Molecule loaded = gson.fromJson(file, Molecule.class);
-                    if (loaded != null) {
-                        Material key = canonical != null ? canonical : material;
-                        molecules.put(key, loaded);
-                        if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                            LOGGER.info("getMolecule: loaded molecule from resourceId={} for material={}",
-                                    resourceId, key);
-                        }
-                        return loaded;
-                    }
-                }
-            } else {
-                if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                    LOGGER.info("getMolecule: resource {} not found in resource manager", resourceId);
-                }
-                String cpPath = "/assets/" + materialId.getNamespace() + "/molecules/" +
-                        materialId.getPath() + ".json";
-                if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                    LOGGER.info("getMolecule: trying classpath resource {}", cpPath);
-                }
-                try (var stream = MolDraw.class.getResourceAsStream(cpPath)) {
-                    if (stream != null) {
-                        var file = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
-                        Molecule loaded = gson.fromJson(file, Molecule.class);
-                        if (loaded != null) {
-                            Material key = canonical != null ? canonical : material;
-                            molecules.put(key, loaded);
-                            if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                                LOGGER.info("getMolecule: loaded molecule from classpath {} for material={}",
-                                        cpPath, key);
-                            }
-                            return loaded;
-                        }
-                    } else if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                        LOGGER.info("getMolecule: classpath resource {} not found", cpPath);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
-                LOGGER.debug("Failed to lazily load molecule for material {}", material, e);
-            }
+        if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
+            LOGGER.info("getMolecule: no molecule for {} (canonical {})", material, canonical);
         }
-
+        MoleculeRegistry.markMissing(material);
         return null;
     }
 
@@ -470,17 +427,6 @@ public class MolDraw {
                 .map(opt -> opt.orElseGet(() -> AlloyTooltipComponent.deriveComponents(material))).orElse(null);
     }
 
-    @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
-    public static void tryColorizeFormula(Material material, OptionalInt idx,
-                                          List<Either<FormattedText, TooltipComponent>> tooltipElements) {
-        if (Objects.nonNull(material.getMaterialComponents()) && !material.getMaterialComponents().isEmpty() ||
-                material.isElement()) {
-            final var coloredFormula = MoleculeColorize.coloredFormula(new MaterialStack(material, 1), true);
-            if (idx.isPresent()) tooltipElements.set(idx.getAsInt(), Either.left(coloredFormula));
-            else tooltipElements.add(1, Either.left(coloredFormula));
-        }
-    }
-
     @SubscribeEvent
     public void tooltipGatherComponents(RenderTooltipEvent.GatherComponents event) {
         if (!MolDrawConfig.INSTANCE.enabled) {
@@ -510,151 +456,42 @@ public class MolDraw {
         ItemStack stack = event.getItemStack();
 
         // 过滤机器物品
-        if (stack.getItem().getClass().getName().contains("MetaMachineItem")) {
+        if (CustomMaterialLookup.isMachineItem(stack.getItem())) {
             if (debug) {
                 MolDraw.LOGGER.info("Filtered out machine item: {}", stack.getItem().getDescriptionId());
             }
             return;
         }
 
-        Material material;
-        if (stack.getItem() instanceof BucketItem) {
-            BucketItem bi = (BucketItem) stack.getItem();
-            // 对于流体桶，使用 ChemicalHelper.getMaterial(Fluid)
-            material = ChemicalHelper.getMaterial(bi.getFluid());
-            if (debug) {
-                MolDraw.LOGGER.info("Fluid bucket material lookup: {}", material);
-            }
-        } else {
-            // 直接使用优化后的查找器
-            if (debug) {
-                MolDraw.LOGGER.info("ItemStack lookup: {}, NBT: {}",
-                        stack.getItem().getDescriptionId(),
-                        stack.getTag());
-            }
-
-            // 使用新的 getMaterial 方法，直接获取 Material
-            Optional<Material> materialOpt = CustomMaterialLookup.getMaterial(stack);
-
-            if (materialOpt.isPresent()) {
-                material = materialOpt.get();
-                if (debug) {
-                    MolDraw.LOGGER.info("Found material: {}, Formula: {}, Components: {}, IsElement: {}",
-                            material.getName(),
-                            material.getChemicalFormula(),
-                            material.getMaterialComponents(),
-                            material.isElement());
-
-                    // 检查是否有对应的molecule
-                    Molecule mol = getMolecule(material);
-                    MolDraw.LOGGER.info("Has molecule in cache: {}", mol != null);
-
-                    // 检查是否有对应的alloy
-                    List<Pair<Material, Long>> alloy = getAlloy(material);
-                    MolDraw.LOGGER.info("Has alloy in cache: {}", alloy != null);
-
-                    // 检查显示配置
-                    MolDraw.LOGGER.info("Config - onlyShowOnShift: {}, showMolecules: {}, showAlloys: {}",
-                            MolDrawConfig.INSTANCE.onlyShowOnShift,
-                            MolDrawConfig.INSTANCE.molecule.showMolecules,
-                            MolDrawConfig.INSTANCE.alloy.showAlloys);
-                }
-            } else {
-                if (debug) {
-                    MolDraw.LOGGER.info("No material found for item");
-                }
-                return;
-            }
-        }
-
-        if (material == null) {
+        final var decision = TooltipDecisions.forStack(stack, TooltipDecisions.expanded(GTUtil.isShiftDown()));
+        if (decision.material == null) {
             if (debug) {
-                MolDraw.LOGGER.info("Material is null or empty: {}", material);
+                MolDraw.LOGGER.info("No material found for item");
             }
             return;
         }
 
-        final var mol = getMolecule(material);
-        final var alloy = getAlloy(material);
         final var tooltipElements = event.getTooltipElements();
-
         if (debug) {
-            MolDraw.LOGGER.info("Molecule found: {}", mol != null);
-            MolDraw.LOGGER.info("Alloy found: {}", alloy != null);
+            final var material = decision.material;
+            MolDraw.LOGGER.info("Found material: {}, Formula: {}, Components: {}, IsElement: {}",
+                    material.getName(),
+                    decision.formula,
+                    material.getMaterialComponents(),
+                    material.isElement());
+            MolDraw.LOGGER.info("Molecule found: {}", decision.molecule != null);
+            MolDraw.LOGGER.info("Alloy found: {}", decision.alloy != null);
+            MolDraw.LOGGER.info("Config - onlyShowOnShift: {}, showMolecules: {}, showAlloys: {}",
+                    MolDrawConfig.INSTANCE.onlyShowOnShift,
+                    MolDrawConfig.INSTANCE.molecule.showMolecules,
+                    MolDrawConfig.INSTANCE.alloy.showAlloys);
             MolDraw.LOGGER.info("Tooltip elements count: {}", tooltipElements.size());
-            MolDraw.LOGGER.info("Only show on shift: {}", MolDrawConfig.INSTANCE.onlyShowOnShift);
             MolDraw.LOGGER.info("GTUtil.isShiftDown(): {}", GTUtil.isShiftDown());
-        }
-
-        final String formula = material.getChemicalFormula();
-        final var idx = IntStream.range(0, tooltipElements.size())
-                .filter(i -> tooltipElements.get(i).left()
-                        .map(tt -> {
-                            String text = tt.getString();
-                            if (text == null || formula == null) {
-                                return false;
-                            }
-                            if (debug && text.contains(formula)) {
-                                MolDraw.LOGGER.info("Found formula match at index {}: {}", i, text);
-                            }
-                            return text.equals(formula);
-                        })
-                        .orElse(false))
-                .reduce((a, b) -> b);
-
-        if (debug) {
+            final var idx = decision.formulaLine(tooltipElements);
             MolDraw.LOGGER.info("Formula index: {}", idx.isPresent() ? idx.getAsInt() : -1);
         }
 
-        if (!MolDrawConfig.INSTANCE.onlyShowOnShift || GTUtil.isShiftDown()) {
-            if (!Objects.isNull(mol) && MolDrawConfig.INSTANCE.molecule.showMolecules) {
-                if (debug) {
-                    MolDraw.LOGGER.info("Displaying molecule tooltip");
-                }
-                if (idx.isPresent()) {
-                    tooltipElements.set(idx.getAsInt(), Either.right(new MoleculeTooltipComponent(mol)));
-                } else {
-                    tooltipElements.add(1, Either.right(new MoleculeTooltipComponent(mol)));
-                }
-            } else if (!Objects.isNull(alloy) && MolDrawConfig.INSTANCE.alloy.showAlloys) {
-                if (debug) {
-                    MolDraw.LOGGER.info("Displaying alloy tooltip");
-                }
-                if (idx.isPresent()) {
-                    tooltipElements.set(idx.getAsInt(), Either.right(new AlloyTooltipComponent(material, alloy)));
-                } else {
-                    tooltipElements.add(1, Either.right(new AlloyTooltipComponent(material, alloy)));
-                }
-            } else {
-                if (debug) {
-                    MolDraw.LOGGER.info("Displaying colored formula");
-                }
-                tryColorizeFormula(material, idx, tooltipElements);
-            }
-        } else {
-            if (debug) {
-                MolDraw.LOGGER.info("Displaying colored formula (shift not down)");
-            }
-            tryColorizeFormula(material, idx, tooltipElements);
-
-            if (MolDrawConfig.INSTANCE.onlyShowOnShift) {
-                final int ttIndex = idx.orElse(1) + 1;
-
-                if (Objects.nonNull(mol) && MolDrawConfig.INSTANCE.molecule.showMolecules) {
-                    if (debug) {
-                        MolDraw.LOGGER.info("Adding shift hint for molecule");
-                    }
-                    tooltipElements.add(ttIndex, Either.left(FormattedText
-                            .of(Component.translatable("tooltip.moldraw.shift_view_molecule").getString())));
-                } else if (Objects.nonNull(alloy) && MolDrawConfig.INSTANCE.alloy.showAlloys) {
-                    if (debug) {
-                        MolDraw.LOGGER.info("Adding shift hint for alloy");
-                    }
-                    tooltipElements.add(ttIndex, Either.left(
-                            FormattedText.of(Component.translatable("tooltip.moldraw.shift_view_alloy").getString())));
-                }
-            }
-        }
+        decision.apply(tooltipElements);
 
         if (debug) {
             MolDraw.LOGGER.info("=== End Tooltip Analysis ===");
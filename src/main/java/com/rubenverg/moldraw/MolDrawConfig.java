@@ -25,6 +25,7 @@ public class MolDrawConfig {
     public boolean enabled = true;
 
     @Configurable
+    @Configurable.ValueUpdateCallback(method = "invalidateTooltips")
     public boolean onlyShowOnShift = true;
 
     @Configurable
@@ -33,17 +34,36 @@ public class MolDrawConfig {
     public static class ColorConfig {
 
         @Configurable
+        @Configurable.ValueUpdateCallback(method = "invalidateColors")
         public boolean colors = true;
 
         @Configurable
+        @Configurable.ValueUpdateCallback(method = "invalidateColors")
         public boolean useMaterialColors = true;
 
         @Configurable
+        @Configurable.ValueUpdateCallback(method = "invalidateColors")
         public String defaultColor = "§e";
 
         @Configurable
         @Configurable.Range(min = 0, max = 1)
+        @Configurable.ValueUpdateCallback(method = "invalidateColors")
         public float minimumBrightness = 0.1f;
+
+        @SuppressWarnings("unused")
+        private void invalidateColors(boolean value, IValidationHandler handler) {
+            MoleculeColorize.invalidateColorCache();
+        }
+
+        @SuppressWarnings("unused")
+        private void invalidateColors(String value, IValidationHandler handler) {
+            MoleculeColorize.invalidateColorCache();
+        }
+
+        @SuppressWarnings("unused")
+        private void invalidateColors(float value, IValidationHandler handler) {
+            MoleculeColorize.invalidateColorCache();
+        }
     }
 
     @Configurable
@@ -52,6 +72,7 @@ public class MolDrawConfig {
     public static class MoleculeConfig {
 
         @Configurable
+        @Configurable.ValueUpdateCallback(method = "invalidateTooltips")
         public boolean showMolecules = true;
 
         @Configurable
@@ -63,6 +84,14 @@ public class MolDrawConfig {
 
         @Configurable
         public float spinSpeedMultiplier = 1;
+
+        @Configurable
+        public boolean cacheMoleculeTextures = true;
+
+        @SuppressWarnings("unused")
+        private void invalidateTooltips(boolean value, IValidationHandler handler) {
+            TooltipDecisions.invalidate();
+        }
     }
 
     @Configurable
@@ -71,6 +100,7 @@ public class MolDrawConfig {
     public static class AlloyConfig {
 
         @Configurable
+        @Configurable.ValueUpdateCallback(method = "invalidateTooltips")
         public boolean showAlloys = true;
 
         @Configurable
@@ -100,6 +130,13 @@ public class MolDrawConfig {
         private void invalidateAlloyCache(boolean value, IValidationHandler handler) {
             AlloyTooltipComponent.invalidateComponentsCache();
             AlloyTooltipComponent.invalidateAlloyRenderCache();
+            // 决策中保存了推导出的合金成分
+            TooltipDecisions.invalidate();
+        }
+
+        @SuppressWarnings("unused")
+        private void invalidateTooltips(boolean value, IValidationHandler handler) {
+            TooltipDecisions.invalidate();
         }
     }
 
@@ -116,4 +153,9 @@ public class MolDrawConfig {
     @Configurable
     @Configurable.Range(min = 0, max = 1000)
     public int previewY = 50;
+
+    @SuppressWarnings("unused")
+    private void invalidateTooltips(boolean value, IValidationHandler handler) {
+        TooltipDecisions.invalidate();
+    }
 }
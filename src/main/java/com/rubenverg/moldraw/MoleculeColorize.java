@@ -1,5 +1,6 @@
 package com.rubenverg.moldraw;
 
+import com.gregtechceu.gtceu.api.GTCEuAPI;
 import com.gregtechceu.gtceu.api.data.chemical.material.Material;
 import com.gregtechceu.gtceu.api.data.chemical.material.stack.MaterialStack;
 import com.gregtechceu.gtceu.api.fluids.GTFluid;
@@ -9,28 +10,51 @@ import net.minecraft.ChatFormatting;
 import net.minecraft.client.Minecraft;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.Style;
+import net.minecraft.server.packs.resources.ResourceManager;
 import net.minecraft.util.FastColor;
 import net.minecraftforge.client.extensions.common.IClientFluidTypeExtensions;
 
 import com.adsioho.gtm.compat.materialLookingup.MaterialHelper;
 import com.mojang.blaze3d.platform.NativeImage;
+import com.rubenverg.moldraw.component.AlloyTooltipComponent;
+import com.rubenverg.moldraw.component.MoleculeRenderCache;
 import com.rubenverg.moldraw.molecule.Element;
 import com.rubenverg.moldraw.molecule.MathUtils;
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.io.IOException;
-import java.math.BigInteger;
+import java.util.Map;
 import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MoleculeColorize {
 
     public static int FALLBACK_COLOR = MathUtils.chatFormattingColor(ChatFormatting.YELLOW);
 
+    private record ParsedColor(String config, int color) {}
+
+    // 默认颜色的解析结果，配置字符串变化时重新解析
+    private static volatile @Nullable ParsedColor parsedDefaultColor;
+
     public static int configColor(@Nullable String config) {
-        final var str = Objects.requireNonNullElse(config, MolDrawConfig.INSTANCE.color.defaultColor);
+        if (config == null) {
+            final var str = MolDrawConfig.INSTANCE.color.defaultColor;
+            final var parsed = parsedDefaultColor;
+            if (parsed != null && parsed.config().equals(str)) return parsed.color();
+            final int color = parseConfigColor(str);
+            parsedDefaultColor = new ParsedColor(str, color);
+            return color;
+        }
+        return parseConfigColor(config);
+    }
+
+    private static int parseConfigColor(String str) {
         if (str.length() == 2 && str.charAt(0) == '§') {
             final var formatting = ChatFormatting.getByCode(str.charAt(1));
             return Objects.isNull(formatting) ? FALLBACK_COLOR :
@@ -48,38 +72,178 @@ public class MoleculeColorize {
         return 0.21 * red + 0.72 * green + 0.07 * blue;
     }
 
-    private static final Object2IntMap<Material> COLOR_CACHE = new Object2IntOpenHashMap<>();
+    // 材料原始颜色，合金预计算线程也会并发写入。资源重载不清空，流体纹理平均色变化时按材料失效
+    private static final StripedColorCache<Material> COLOR_CACHE = new StripedColorCache<>();
+    // 每次颜色失效时递增，计算期间颜色被失效的结果不写入缓存
+    private static volatile int colorGeneration;
+
+    // 最终（提亮后）颜色表，颜色配置变化时清空后按需重建
+    private static final StripedColorCache<Element> ELEMENT_COLORS = new StripedColorCache<>();
+    private static final StripedColorCache<Material> MATERIAL_COLORS = new StripedColorCache<>();
 
+    private static final int MAX_DEPENDENCY_DEPTH = 10;
+
+    /**
+     * 颜色配置变化时调用：清空所有颜色缓存以及烘焙了颜色的分子图像与合金渲染数据
+     */
     public static void invalidateColorCache() {
+        colorGeneration++;
         COLOR_CACHE.clear();
+        FORMULA_CACHE.clear();
+        ELEMENT_COLORS.clear();
+        MATERIAL_COLORS.clear();
+        parsedDefaultColor = null;
+        MoleculeRenderCache.clearImages();
+        AlloyTooltipComponent.invalidateAlloyRenderCache();
     }
 
-    private static int doGetColorForMaterial(Material material) {
-        if (material.getMaterialARGB() == 0xffffffff && material.hasFluid() &&
-                material.getFluid() instanceof GTFluid gtFluid) {
-            final var texturePath = IClientFluidTypeExtensions.of(gtFluid.getFluidType()).getStillTexture();
-            try {
-                final var resource = Minecraft.getInstance().getResourceManager()
-                        .getResourceOrThrow(texturePath.withSuffix(".png").withPrefix("textures/"));
-                NativeImage image;
-                try (final var stream = resource.open()) {
-                    image = NativeImage.read(stream);
-                }
-                var red = BigInteger.ZERO;
-                var green = BigInteger.ZERO;
-                var blue = BigInteger.ZERO;
-                for (final var pixel : image.getPixelsRGBA()) {
-                    red = red.add(BigInteger.valueOf(FastColor.ABGR32.red(pixel)));
-                    green = green.add(BigInteger.valueOf(FastColor.ABGR32.green(pixel)));
-                    blue = blue.add(BigInteger.valueOf(FastColor.ABGR32.blue(pixel)));
-                }
-                final var size = BigInteger.valueOf((long) image.getWidth() * image.getHeight());
-                return FastColor.ARGB32.color(0xff, red.divide(size).intValue(), green.divide(size).intValue(),
-                        blue.divide(size).intValue());
-            } catch (IOException ignored) {
+    /**
+     * 只失效用到该材料颜色的缓存：材料本身、以它为材料的元素、含有它的化学式、分子图像与合金渲染数据。
+     * 只在渲染线程调用。
+     */
+    private static void invalidateMaterialColor(Material material) {
+        colorGeneration++;
+        COLOR_CACHE.remove(material);
+        MATERIAL_COLORS.remove(material);
+        ELEMENT_COLORS.removeIf(element -> element.material == material);
+        FORMULA_CACHE.keySet().removeIf(key -> dependsOnColor(key.material(), material));
+        MoleculeRenderCache.invalidateImages(element -> element.material == material);
+        AlloyTooltipComponent.invalidateAlloyRenderCacheForColor(material);
+    }
+
+    /**
+     * 材料的颜色或着色化学式是否用到了另一材料的颜色，与 {@link #coloredFormula(MaterialStack, boolean)} 的取色方式一致
+     */
+    public static boolean dependsOnColor(Material material, Material changed) {
+        return dependsOnColor(material, changed, 0);
+    }
+
+    private static boolean dependsOnColor(Material material, Material changed, int depth) {
+        if (material == changed) return true;
+        if (material.isElement())
+            return Element.forMaterial(material).map(element -> element.material == changed).orElse(false);
+        final var components = material.getMaterialComponents();
+        if (Objects.isNull(components) || depth >= MAX_DEPENDENCY_DEPTH) return false;
+        for (final var component : components) {
+            if (dependsOnColor(component.material(), changed, depth + 1)) return true;
+        }
+        return false;
+    }
+
+    public static int colorGeneration() {
+        return colorGeneration;
+    }
+
+    // 纹理取平均色的采样上限，超过时按固定步长隔行隔列采样
+    private static final int MAX_TEXTURE_SAMPLES = 4096;
+
+    private static final ExecutorService FLUID_COLOR_EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MolDraw-FluidColor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        return thread;
+    });
+
+    // 流体纹理平均色的计算任务，每次重载取消未完成的任务并全部丢弃，不再持有旧的资源管理器
+    private static final Map<Material, CompletableFuture<OptionalInt>> FLUID_COLORS = new ConcurrentHashMap<>();
+    // 本次重载中纹理读取失败的材料：失败结果不缓存，下次重载时重试，期间使用材料颜色
+    private static final Set<Material> FLUID_COLOR_FAILURES = ConcurrentHashMap.newKeySet();
+
+    private static boolean usesFluidTexture(Material material) {
+        return material.getMaterialARGB() == 0xffffffff && material.hasFluid() &&
+                material.getFluid() instanceof GTFluid;
+    }
+
+    private static CompletableFuture<OptionalInt> fluidColor(Material material, ResourceManager resourceManager) {
+        return FLUID_COLORS.computeIfAbsent(material, m -> {
+            // 取消时直接取消读取任务本身，尚未执行的读取不再访问已关闭的资源包
+            final var future = CompletableFuture.supplyAsync(() -> readFluidColor(m, resourceManager),
+                    FLUID_COLOR_EXECUTOR);
+            future.whenComplete((color, error) -> {
+                if (error == null) Minecraft.getInstance().execute(() -> onFluidColor(m, future, color));
+            });
+            return future;
+        });
+    }
 
+    /**
+     * 纹理平均色就绪：与已给出的颜色不同时（之前给出的是回退值或上次重载的平均色）只失效该材料
+     */
+    private static void onFluidColor(Material material, CompletableFuture<OptionalInt> future, OptionalInt color) {
+        // 已被之后的重载取代
+        if (FLUID_COLORS.get(material) != future) return;
+        if (color.isEmpty()) {
+            FLUID_COLOR_FAILURES.add(material);
+            FLUID_COLORS.remove(material, future);
+        }
+        final long served = COLOR_CACHE.lookup(material);
+        if (served == StripedColorCache.MISSING) {
+            // 尚未缓存，但可能有线程正在以回退值计算，使其结果不写入
+            colorGeneration++;
+            return;
+        }
+        if ((int) served != color.orElseGet(() -> baseColor(material))) invalidateMaterialColor(material);
+    }
+
+    private static OptionalInt readFluidColor(Material material, ResourceManager resourceManager) {
+        if (!(material.getFluid() instanceof GTFluid gtFluid)) return OptionalInt.empty();
+        final var texturePath = IClientFluidTypeExtensions.of(gtFluid.getFluidType()).getStillTexture();
+        try {
+            final var resource = resourceManager
+                    .getResourceOrThrow(texturePath.withSuffix(".png").withPrefix("textures/"));
+            try (final var stream = resource.open(); final var image = NativeImage.read(stream)) {
+                return OptionalInt.of(averageColor(image));
+            }
+        } catch (IOException | RuntimeException e) {
+            return OptionalInt.empty();
+        }
+    }
+
+    private static int averageColor(NativeImage image) {
+        final int width = image.getWidth(), height = image.getHeight();
+        final int step = Math.max(1, (int) Math.sqrt((double) width * height / MAX_TEXTURE_SAMPLES));
+        long red = 0, green = 0, blue = 0, count = 0;
+        for (int y = 0; y < height; y += step) {
+            for (int x = 0; x < width; x += step) {
+                final int pixel = image.getPixelRGBA(x, y);
+                red += FastColor.ABGR32.red(pixel);
+                green += FastColor.ABGR32.green(pixel);
+                blue += FastColor.ABGR32.blue(pixel);
+                count++;
             }
         }
+        if (count == 0) return 0xffffffff;
+        return FastColor.ARGB32.color(0xff, (int) (red / count), (int) (green / count), (int) (blue / count));
+    }
+
+    /**
+     * 重载时取消未完成的读取并丢弃旧的纹理平均色与失败记录，在后台为所有使用流体纹理着色的 GT 材料重新计算
+     */
+    public static void warmFluidColors(ResourceManager resourceManager) {
+        FLUID_COLORS.values().forEach(future -> future.cancel(false));
+        FLUID_COLORS.clear();
+        FLUID_COLOR_FAILURES.clear();
+        for (final var material : GTCEuAPI.materialManager.getRegisteredMaterials()) {
+            if (usesFluidTexture(material)) fluidColor(material, resourceManager);
+        }
+    }
+
+    private static int doGetColorForMaterial(Material material) {
+        if (usesFluidTexture(material) && !FLUID_COLOR_FAILURES.contains(material)) {
+            final var future = fluidColor(material, Minecraft.getInstance().getResourceManager());
+            // 未就绪时使用材料颜色，就绪后由 onFluidColor 失效
+            if (future.isDone() && !future.isCancelled()) {
+                final var color = future.join();
+                if (color.isPresent()) return color.getAsInt();
+                // 读取失败的结果不缓存，本次重载内不再重试
+                FLUID_COLOR_FAILURES.add(material);
+                FLUID_COLORS.remove(material, future);
+            }
+        }
+        return baseColor(material);
+    }
+
+    private static int baseColor(Material material) {
         if (material.getMaterialSecondaryARGB() != 0xffffffff) {
             final int primary = material.getMaterialARGB(), secondary = material.getMaterialSecondaryARGB();
             return brightness(primary) > brightness(secondary) ? primary : secondary;
@@ -88,10 +252,13 @@ public class MoleculeColorize {
     }
 
     public static int getColorForMaterial(Material material) {
-        if (!COLOR_CACHE.containsKey(material)) {
-            COLOR_CACHE.put(material, doGetColorForMaterial(material));
-        }
-        return COLOR_CACHE.getInt(material);
+        final long cached = COLOR_CACHE.lookup(material);
+        if (cached != StripedColorCache.MISSING) return (int) cached;
+        final int generation = colorGeneration;
+        final int color = doGetColorForMaterial(material);
+        // 计算期间颜色被失效时不写入，避免留下旧配置下的结果
+        if (generation == colorGeneration) COLOR_CACHE.put(material, color);
+        return color;
     }
 
     public static int lightenColor(int color) {
@@ -102,7 +269,12 @@ public class MoleculeColorize {
     }
 
     public static int colorForMaterial(Material material) {
-        return lightenColor(getColorForMaterial(material));
+        final long cached = MATERIAL_COLORS.lookup(material);
+        if (cached != StripedColorCache.MISSING) return (int) cached;
+        final int generation = colorGeneration;
+        final int color = lightenColor(getColorForMaterial(material));
+        if (generation == colorGeneration) MATERIAL_COLORS.put(material, color);
+        return color;
     }
 
     public static int getColorForElement(Element element) {
@@ -118,7 +290,32 @@ public class MoleculeColorize {
     }
 
     public static int colorForElement(Element element) {
-        return lightenColor(getColorForElement(element));
+        final long cached = ELEMENT_COLORS.lookup(element);
+        if (cached != StripedColorCache.MISSING) return (int) cached;
+        final int generation = colorGeneration;
+        final int color = lightenColor(getColorForElement(element));
+        if (generation == colorGeneration) ELEMENT_COLORS.put(element, color);
+        return color;
+    }
+
+    private record FormulaKey(Material material, boolean colors, boolean useMaterialColors, String defaultColor,
+                              float minimumBrightness) {}
+
+    // 提示框每帧都会重新收集组件，完成的化学式组件按材料与颜色配置缓存，视为不可变
+    private static final Map<FormulaKey, Component> FORMULA_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 材料顶层化学式的着色组件，结果被缓存，调用方不得修改
+     */
+    public static Component coloredFormula(Material material) {
+        final var color = MolDrawConfig.INSTANCE.color;
+        final var key = new FormulaKey(material, color.colors, color.useMaterialColors, color.defaultColor,
+                color.minimumBrightness);
+        final var cached = FORMULA_CACHE.get(key);
+        if (cached != null) return cached;
+        final var formula = coloredFormula(new MaterialStack(material, 1), true);
+        FORMULA_CACHE.put(key, formula);
+        return formula;
     }
 
     public static Component coloredFormula(MaterialStack stack, boolean topLevel) {
@@ -0,0 +1,172 @@
+package com.rubenverg.moldraw;
+
+import com.gregtechceu.gtceu.api.GTCEuAPI;
+import com.gregtechceu.gtceu.api.data.chemical.material.Material;
+
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.packs.resources.Resource;
+import net.minecraft.server.packs.resources.ResourceManager;
+
+import com.google.gson.JsonParseException;
+import com.rubenverg.moldraw.molecule.Molecule;
+import com.rubenverg.moldraw.molecule.MoleculeBundle;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 分子资源索引器：重载时只读取数据生成的二进制分子包的条目表，
+ * 并将 molecules/*.json 拆分为多个 fork-join 子任务并行计算指纹、解析材料，不解析分子本身。
+ * 分子在 {@link MoleculeRegistry} 首次查询时才从记录的来源解码。
+ * 分子包按整个文件计算指纹，包内条目共享同一指纹；JSON 按单个文件计算指纹。
+ * 分子包与同名 JSON 按来源资源包的优先级取舍：优先级更高的一方生效。二者来自同一资源包时
+ * （Forge 把所有模组的资源合并在同一个资源包中），JSON 覆盖分子包条目，但内容哈希与分子包条目记录的哈希
+ * 相同的 JSON 即数据生成时与分子包一同写出的那一份，直接跳过。
+ */
+@SuppressWarnings("removal")
+public final class MoleculeLoader {
+
+    private static final int SPLIT_THRESHOLD = 16;
+
+    private MoleculeLoader() {}
+
+    public static Map<Material, MoleculeRegistry.Entry> load(ResourceManager resourceManager) {
+        final long bundleStart = System.nanoTime();
+        final Map<Material, MoleculeRegistry.Entry> entries = new LinkedHashMap<>();
+        final Map<ResourceLocation, Bundled> bundled = new HashMap<>();
+        // 资源包从低优先级到高优先级的序号
+        final Map<String, Integer> packOrder = new HashMap<>();
+        resourceManager.listPacks().forEach(pack -> packOrder.putIfAbsent(pack.packId(), packOrder.size()));
+        // 从低优先级到高优先级依次索引，高优先级资源包中的分子包覆盖低优先级的条目
+        for (final var resource : resourceManager.getResourceStack(MoleculeBundle.LOCATION)) {
+            try (final var stream = resource.open()) {
+                final var bytes = stream.readAllBytes();
+                final var bundle = MoleculeBundle.read(bytes);
+                final var fingerprint = ResourceFingerprint.of(resource, bytes);
+                final int pack = packOrder.getOrDefault(resource.sourcePackId(), -1);
+                for (final var id : bundle.ids()) {
+                    final var material = GTCEuAPI.materialManager.getMaterial(id.toString());
+                    if (Objects.isNull(material)) {
+                        continue;
+                    }
+                    entries.put(material, new MoleculeRegistry.Entry(fingerprint, () -> bundle.decode(id)));
+                    bundled.put(id, new Bundled(bundle.sourceHash(id), pack));
+                }
+            } catch (IOException | RuntimeException e) {
+                MolDraw.LOGGER.warn("Failed to read molecule bundle from pack {}", resource.sourcePackId(), e);
+            }
+        }
+        final long bundleNanos = System.nanoTime() - bundleStart;
+
+        final long listStart = System.nanoTime();
+        final List<Map.Entry<ResourceLocation, Resource>> resources = List.copyOf(resourceManager
+                .listResources("molecules", path -> path.toString().endsWith(".json")).entrySet());
+        final long listNanos = System.nanoTime() - listStart;
+
+        // 在重载线程池（本身即 ForkJoinPool）内调用时直接复用它，否则回退到公共池
+        final long indexStart = System.nanoTime();
+        final var result = new IndexTask(resources, bundled, packOrder, 0, resources.size()).invoke();
+        final long indexNanos = System.nanoTime() - indexStart;
+        entries.putAll(result);
+
+        if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
+            MolDraw.LOGGER.info(
+                    "Indexed {} molecules ({} bundled, {} from JSON) in {} ms (bundle {} ms, list {} ms, hash {} ms)",
+                    entries.size(), bundled.size(), result.size(),
+                    millis(bundleNanos + listNanos + indexNanos), millis(bundleNanos), millis(listNanos),
+                    millis(indexNanos));
+        }
+        return entries;
+    }
+
+    /**
+     * {@code namespace:molecules/path.json} -> {@code namespace:path}
+     */
+    private static ResourceLocation moleculeId(ResourceLocation file) {
+        final var path = file.getPath();
+        return new ResourceLocation(file.getNamespace(),
+                path.substring("molecules/".length(), path.length() - ".json".length()));
+    }
+
+    /**
+     * 分子包条目记录的来源 JSON 哈希，以及分子包所在资源包的优先级序号
+     */
+    private record Bundled(long sourceHash, int pack) {}
+
+    private static String millis(long nanos) {
+        return "%.1f".formatted(nanos / 1_000_000d);
+    }
+
+    private static Molecule decodeJson(ResourceLocation file, Resource resource) throws IOException {
+        final String json;
+        try (final var stream = resource.open()) {
+            json = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            return MolDraw.gson.fromJson(json, Molecule.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Failed to parse molecule " + file, e);
+        }
+    }
+
+    private static final class IndexTask extends RecursiveTask<Map<Material, MoleculeRegistry.Entry>> {
+
+        private final List<Map.Entry<ResourceLocation, Resource>> resources;
+        private final Map<ResourceLocation, Bundled> bundled;
+        private final Map<String, Integer> packOrder;
+        private final int from, to;
+
+        IndexTask(List<Map.Entry<ResourceLocation, Resource>> resources, Map<ResourceLocation, Bundled> bundled,
+                  Map<String, Integer> packOrder, int from, int to) {
+            this.resources = resources;
+            this.bundled = bundled;
+            this.packOrder = packOrder;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<Material, MoleculeRegistry.Entry> compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                final int mid = (from + to) >>> 1;
+                final var right = new IndexTask(resources, bundled, packOrder, mid, to);
+                right.fork();
+                final var left = new IndexTask(resources, bundled, packOrder, from, mid).compute();
+                // 按资源顺序插入，合并时右侧覆盖左侧，与顺序加载的结果一致
+                left.putAll(right.join());
+                return left;
+            }
+            final Map<Material, MoleculeRegistry.Entry> partial = new LinkedHashMap<>();
+            for (int i = from; i < to; i++) {
+                final var entry = resources.get(i);
+                final var id = moleculeId(entry.getKey());
+                final var material = GTCEuAPI.materialManager.getMaterial(id.toString());
+                if (Objects.isNull(material)) {
+                    continue;
+                }
+                // 来自优先级更低的资源包的 JSON 不覆盖分子包
+                final var bundledEntry = bundled.get(id);
+                final int pack = packOrder.getOrDefault(entry.getValue().sourcePackId(), -1);
+                if (bundledEntry != null && pack < bundledEntry.pack()) {
+                    continue;
+                }
+                final ResourceFingerprint fingerprint;
+                try (final var stream = entry.getValue().open()) {
+                    fingerprint = ResourceFingerprint.of(entry.getValue(), stream.readAllBytes());
+                } catch (IOException e) {
+                    MolDraw.LOGGER.warn("Failed to read molecule {}", entry.getKey(), e);
+                    continue;
+                }
+                // 与分子包条目相同的 JSON 不覆盖，沿用分子包的条目
+                if (bundledEntry != null && bundledEntry.sourceHash() == fingerprint.hash()) {
+                    continue;
+                }
+                partial.put(material, new MoleculeRegistry.Entry(fingerprint,
+                        () -> decodeJson(entry.getKey(), entry.getValue())));
+            }
+            return partial;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.rubenverg.moldraw;
+
+import com.gregtechceu.gtceu.api.GTCEuAPI;
+import com.gregtechceu.gtceu.api.data.chemical.material.Material;
+
+import com.rubenverg.moldraw.component.MoleculeRenderCache;
+import com.rubenverg.moldraw.molecule.Molecule;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 分子注册表：重载时只保存“材料 -> 分子来源”的索引，首次查询时才解码，
+ * 解码结果放入按访问顺序淘汰的有界缓存。被淘汰的分子下次查询时重新从来源解码。
+ * 重载时指纹未变的条目保留已解码的分子实例，以其为键的渲染缓存也随之保留。
+ * 另按实例身份记录材料到同 id 规范材料的映射，以及确认没有分子的材料，未命中的查询只需一次查表。
+ */
+public final class MoleculeRegistry {
+
+    /**
+     * 分子来源：JSON 资源或分子包中的一个条目
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        Molecule decode() throws IOException;
+    }
+
+    /**
+     * @param fingerprint 别名条目为 {@code null}，重载时总是丢弃
+     */
+    public record Entry(@Nullable ResourceFingerprint fingerprint, Source source) {}
+
+    private static final int MAX_DECODED = 256;
+
+    private static final Map<Material, Entry> index = new HashMap<>();
+    private static final Map<Material, Molecule> decoded = new LinkedHashMap<>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Material, Molecule> eldest) {
+            return size() > MAX_DECODED;
+        }
+    };
+
+    /** 材料实例 -> 同 id 的已注册材料，已注册材料映射到自身 */
+    private static final Map<Material, Material> canonical = new Reference2ObjectOpenHashMap<>();
+    /** 规范材料与别名都没有分子的材料 */
+    private static final Set<Material> missing = new ReferenceOpenHashSet<>();
+
+    // 调试模式下统计上次重载以来的延迟解码次数与耗时，解析已从重载阶段移到这里
+    private static int decodeCount;
+    private static long decodeNanos;
+
+    private MoleculeRegistry() {}
+
+    /**
+     * 只在渲染线程调用：被丢弃的分子实例的渲染缓存与纹理在此一并移除
+     */
+    public static synchronized void replace(Map<Material, Entry> entries) {
+        int unchanged = 0;
+        final Set<Molecule> dropped = new ReferenceOpenHashSet<>();
+        for (final var it = decoded.entrySet().iterator(); it.hasNext();) {
+            final var entry = it.next();
+            final var previous = index.get(entry.getKey());
+            final var next = entries.get(entry.getKey());
+            if (previous != null && next != null && previous.fingerprint() != null &&
+                    previous.fingerprint().equals(next.fingerprint())) {
+                unchanged++;
+            } else {
+                dropped.add(entry.getValue());
+                it.remove();
+            }
+        }
+        // 别名与规范材料共享实例，仍被保留的实例不能移除
+        dropped.removeAll(decoded.values());
+        dropped.forEach(MoleculeRenderCache::remove);
+        index.clear();
+        index.putAll(entries);
+        missing.clear();
+        if (MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
+            MolDraw.LOGGER.info("Molecule reload kept {} decoded molecules, {} indexed; " +
+                    "{} molecules decoded lazily since last reload in {} ms",
+                    unchanged, index.size(), decodeCount, "%.1f".formatted(decodeNanos / 1_000_000d));
+        }
+        decodeCount = 0;
+        decodeNanos = 0;
+    }
+
+    public static synchronized boolean contains(Material material) {
+        return index.containsKey(material);
+    }
+
+    public static synchronized int size() {
+        return index.size();
+    }
+
+    public static synchronized @Nullable Molecule get(Material material) {
+        final var cached = decoded.get(material);
+        if (cached != null) return cached;
+        final var entry = index.get(material);
+        if (entry == null) return null;
+        final Molecule molecule;
+        final long start = System.nanoTime();
+        try {
+            molecule = entry.source().decode();
+        } catch (IOException | RuntimeException e) {
+            // 解码失败的条目从索引中移除，避免每次悬停都重复报错
+            MolDraw.LOGGER.error("Failed to decode molecule for material {}", material.getName(), e);
+            index.remove(material);
+            return null;
+        }
+        // 别名条目委托给规范材料，耗时已在那里统计
+        if (entry.fingerprint() != null && MolDrawConfig.INSTANCE != null && MolDrawConfig.INSTANCE.debugMode) {
+            final long nanos = System.nanoTime() - start;
+            decodeCount++;
+            decodeNanos += nanos;
+            MolDraw.LOGGER.info("Decoded molecule for material {} in {} ms", material.getName(),
+                    "%.2f".formatted(nanos / 1_000_000d));
+        }
+        if (molecule != null) decoded.put(material, molecule);
+        return molecule;
+    }
+
+    /**
+     * 重载时以 GT 注册表中的材料重建规范材料映射
+     */
+    public static synchronized void indexMaterials(Iterable<Material> registered) {
+        canonical.clear();
+        for (final var material : registered) canonical.put(material, material);
+        missing.clear();
+    }
+
+    /**
+     * 与该材料同 id 的已注册材料，未注册的实例首次查询时按 id 解析一次并记住，解析不到时为自身
+     */
+    public static synchronized Material canonical(Material material) {
+        var result = canonical.get(material);
+        if (result == null) {
+            result = GTCEuAPI.materialManager.getMaterial(material.getResourceLocation().toString());
+            if (result == null) result = material;
+            canonical.put(material, result);
+        }
+        return result;
+    }
+
+    public static synchronized boolean isMissing(Material material) {
+        return missing.contains(material);
+    }
+
+    public static synchronized void markMissing(Material material) {
+        missing.add(material);
+    }
+
+    /**
+     * 让别名材料共享规范材料的分子实例
+     */
+    public static synchronized void alias(Material alias, Material canonical) {
+        if (alias == canonical || !index.containsKey(canonical)) return;
+        index.put(alias, new Entry(null, () -> get(canonical)));
+    }
+}
@@ -0,0 +1,19 @@
+package com.rubenverg.moldraw;
+
+import net.minecraft.server.packs.resources.Resource;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * 资源指纹：来源资源包 ID 与内容哈希。重载时指纹不变的条目沿用上一次的解析结果与渲染缓存。
+ */
+public record ResourceFingerprint(String packId, long hash) {
+
+    public static ResourceFingerprint of(Resource resource, byte[] content) {
+        return new ResourceFingerprint(resource.sourcePackId(), hash(content));
+    }
+
+    public static long hash(byte[] content) {
+        return Hashing.murmur3_128().hashBytes(content).asLong();
+    }
+}
@@ -0,0 +1,72 @@
+package com.rubenverg.moldraw;
+
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+
+import java.util.function.Predicate;
+
+/**
+ * 分段加锁的颜色缓存：键按哈希分到若干段，每段一个基本类型哈希表，可由渲染线程与合金预计算线程并发读写。
+ * 颜色以无符号形式存为 long，{@link #MISSING} 表示未缓存，一次查找即可区分命中与缺失。
+ */
+final class StripedColorCache<K> {
+
+    static final long MISSING = -1L;
+
+    private static final int STRIPES = 16;
+
+    private final Object2LongOpenHashMap<K>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    StripedColorCache() {
+        stripes = new Object2LongOpenHashMap[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object2LongOpenHashMap<>();
+            stripes[i].defaultReturnValue(MISSING);
+        }
+    }
+
+    private Object2LongOpenHashMap<K> stripe(Object key) {
+        final int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /**
+     * @return 缓存的颜色（无符号），未缓存时为 {@link #MISSING}
+     */
+    long lookup(K key) {
+        final var stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.getLong(key);
+        }
+    }
+
+    void put(K key, int color) {
+        final var stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, color & 0xffffffffL);
+        }
+    }
+
+    void remove(K key) {
+        final var stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.removeLong(key);
+        }
+    }
+
+    void removeIf(Predicate<K> filter) {
+        for (final var stripe : stripes) {
+            synchronized (stripe) {
+                stripe.keySet().removeIf(filter);
+            }
+        }
+    }
+
+    void clear() {
+        for (final var stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.rubenverg.moldraw;
+
+import com.gregtechceu.gtceu.api.data.chemical.ChemicalHelper;
+import com.gregtechceu.gtceu.api.data.chemical.material.Material;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.FormattedText;
+import net.minecraft.world.inventory.tooltip.TooltipComponent;
+import net.minecraft.world.item.BucketItem;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.level.material.Fluid;
+
+import com.adsioho.gtm.compat.materialLookingup.MaterialHelper;
+import com.mojang.datafixers.util.Either;
+import com.rubenverg.moldraw.component.AlloyTooltipComponent;
+import com.rubenverg.moldraw.component.MoleculeTooltipComponent;
+import com.rubenverg.moldraw.molecule.Molecule;
+import org.jetbrains.annotations.Nullable;
+import oshi.util.tuples.Pair;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 提示框决策缓存：按物品（流体桶按流体）与是否展开记录找到的材料、要注入的内容与化学式字符串。
+ * 显示开关、合金推导配置、资源或标签重载时递增版本，旧版本的决策不再使用。
+ * 带 NBT 的物品材料可能取决于 NBT，每次重新决策。
+ */
+public final class TooltipDecisions {
+
+    private record Key(Object source, boolean expanded) {}
+
+    private static final Map<Key, Decision> DECISIONS = new ConcurrentHashMap<>();
+    private static volatile int version;
+
+    private TooltipDecisions() {}
+
+    public static void invalidate() {
+        version++;
+        DECISIONS.clear();
+    }
+
+    /**
+     * 当前是否展开显示分子或合金，而不是只显示化学式与 Shift 提示
+     */
+    public static boolean expanded(boolean shiftDown) {
+        return !MolDrawConfig.INSTANCE.onlyShowOnShift || shiftDown;
+    }
+
+    public static Decision forStack(ItemStack stack, boolean expanded) {
+        if (stack.getItem() instanceof BucketItem bucket) return forFluid(bucket.getFluid(), expanded);
+        if (stack.hasTag()) return decide(CustomMaterialLookup.getMaterial(stack).orElse(null), expanded);
+        return cached(stack.getItem(), expanded,
+                () -> CustomMaterialLookup.getMaterial(stack).orElse(null));
+    }
+
+    public static Decision forFluid(Fluid fluid, boolean expanded) {
+        return cached(fluid, expanded, () -> ChemicalHelper.getMaterial(fluid));
+    }
+
+    private interface MaterialSource {
+
+        @Nullable
+        Material get();
+    }
+
+    private static Decision cached(Object source, boolean expanded, MaterialSource material) {
+        final var key = new Key(source, expanded);
+        final var cached = DECISIONS.get(key);
+        final int current = version;
+        if (cached != null && cached.version == current) return cached;
+        final var decision = decide(material.get(), expanded);
+        // 决策期间版本变化时不写入，避免旧结果覆盖失效
+        if (version == current) DECISIONS.put(key, decision);
+        return decision;
+    }
+
+    private static Decision decide(@Nullable Material material, boolean expanded) {
+        final int current = version;
+        if (MaterialHelper.isNull(material)) return new Decision(current, null, null, null, null, false, null, null);
+        final var mol = MolDraw.getMolecule(material);
+        final var alloy = MolDraw.getAlloy(material);
+        final boolean showMolecule = mol != null && MolDrawConfig.INSTANCE.molecule.showMolecules;
+        final boolean showAlloy = !showMolecule && alloy != null && MolDrawConfig.INSTANCE.alloy.showAlloys;
+        final boolean colorize = Objects.nonNull(material.getMaterialComponents()) &&
+                !material.getMaterialComponents().isEmpty() || material.isElement();
+        Either<FormattedText, TooltipComponent> visual = null;
+        FormattedText hint = null;
+        if (expanded) {
+            if (showMolecule) visual = Either.right(new MoleculeTooltipComponent(mol));
+            else if (showAlloy) visual = Either.right(new AlloyTooltipComponent(material, alloy));
+        } else if (MolDrawConfig.INSTANCE.onlyShowOnShift) {
+            if (showMolecule)
+                hint = FormattedText.of(Component.translatable("tooltip.moldraw.shift_view_molecule").getString());
+            else if (showAlloy)
+                hint = FormattedText.of(Component.translatable("tooltip.moldraw.shift_view_alloy").getString());
+        }
+        return new Decision(current, material, mol, alloy, material.getChemicalFormula(), colorize, visual, hint);
+    }
+
+    public static final class Decision {
+
+        private final int version;
+        public final @Nullable Material material;
+        public final @Nullable Molecule molecule;
+        public final @Nullable List<Pair<Material, Long>> alloy;
+        public final @Nullable String formula;
+        /** 材料有成分或是元素时才替换为着色的化学式 */
+        private final boolean colorize;
+        /** 替换化学式行的分子或合金，为 {@code null} 时改为着色的化学式 */
+        private final @Nullable Either<FormattedText, TooltipComponent> visual;
+        /** 未展开时追加在化学式下方的提示 */
+        private final @Nullable FormattedText hint;
+        // 上次找到化学式的行及当时的行数，同一物品的提示框逐帧结构相同，先按此校验
+        private int formulaLine = -1;
+        private int formulaLineCount = -1;
+
+        private Decision(int version, @Nullable Material material, @Nullable Molecule molecule,
+                         @Nullable List<Pair<Material, Long>> alloy, @Nullable String formula, boolean colorize,
+                         @Nullable Either<FormattedText, TooltipComponent> visual, @Nullable FormattedText hint) {
+            this.version = version;
+            this.material = material;
+            this.molecule = molecule;
+            this.alloy = alloy;
+            this.formula = formula;
+            this.colorize = colorize;
+            this.visual = visual;
+            this.hint = hint;
+        }
+
+        /**
+         * @return 最后一行与化学式完全相同的文本行
+         */
+        public OptionalInt formulaLine(List<Either<FormattedText, TooltipComponent>> lines) {
+            if (formula == null) return OptionalInt.empty();
+            final int hinted = formulaLine;
+            if (lines.size() == formulaLineCount && hinted >= 0 && isFormula(lines.get(hinted)))
+                return OptionalInt.of(hinted);
+            for (int i = lines.size() - 1; i >= 0; i--) {
+                if (isFormula(lines.get(i))) {
+                    formulaLine = i;
+                    formulaLineCount = lines.size();
+                    return OptionalInt.of(i);
+                }
+            }
+            return OptionalInt.empty();
+        }
+
+        private boolean isFormula(Either<FormattedText, TooltipComponent> line) {
+            final var text = line.left();
+            return text.isPresent() && formula.equals(text.get().getString());
+        }
+
+        /**
+         * 把决策应用到提示框各行
+         */
+        public void apply(List<Either<FormattedText, TooltipComponent>> lines) {
+            if (material == null) return;
+            final var idx = formulaLine(lines);
+            if (visual != null) {
+                if (idx.isPresent()) lines.set(idx.getAsInt(), visual);
+                else lines.add(1, visual);
+                return;
+            }
+            if (colorize) {
+                final var coloredFormula = Either.<FormattedText, TooltipComponent>left(
+                        MoleculeColorize.coloredFormula(material));
+                if (idx.isPresent()) lines.set(idx.getAsInt(), coloredFormula);
+                else lines.add(1, coloredFormula);
+            }
+            if (hint != null) lines.add(idx.orElse(1) + 1, Either.left(hint));
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.rubenverg.moldraw.component;
 
 import com.gregtechceu.gtceu.api.data.chemical.material.Material;
-import com.gregtechceu.gtceu.api.data.chemical.material.stack.MaterialStack;
 
 import net.minecraft.MethodsReturnNonnullByDefault;
 import net.minecraft.client.Minecraft;
@@ -82,10 +81,15 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
                 }
                 // 提交异步任务
                 return CompletableFuture.supplyAsync(() -> {
+                    final int generation = MoleculeColorize.colorGeneration();
                     CachedAlloyTooltipData result = buildCachedData(rawComponents, expanded);
-                    // 计算完成后更新缓存
-                    RENDER_CACHE.put(k, result);
-                    cleanupCaches();
+                    // 计算完成后更新缓存；期间颜色被失效时不写入，下次请求重新计算
+                    if (generation == MoleculeColorize.colorGeneration()) {
+                        RENDER_CACHE.put(k, result);
+                        cleanupCaches();
+                    } else {
+                        renderFutures.remove(k);
+                    }
                     return result;
                 }, executorService);
             });
@@ -96,6 +100,10 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
             renderFutures.clear();
         }
 
+        public static void clearRenderFutures(Collection<Material> materials) {
+            renderFutures.keySet().removeIf(key -> materials.contains(key.material()));
+        }
+
         /**
          * 关闭线程池
          */
@@ -140,6 +148,9 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
         }
     }
 
+    /**
+     * 饼图颜色与化学式取自材料颜色，颜色变化时由 {@link #invalidateAlloyRenderCacheForColor} 按成分失效
+     */
     private static record RenderCacheKey(Material material, boolean recursive, boolean partsByMass,
                                          int pieChartRadius, int pieChartComplexity, int maxComponentsDisplayed,
                                          boolean expanded) {
@@ -234,8 +245,9 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
     private static int cacheHits = 0;
     private static int cacheMisses = 0;
 
-    private static final Map<ComponentsCacheKey, List<Pair<Material, Long>>> COMPONENTS_CACHE = new HashMap<>();
-    private static final Map<RenderCacheKey, CachedAlloyTooltipData> RENDER_CACHE = new HashMap<>();
+    // 计算线程写入并清理，重载线程按材料失效，需要并发安全
+    private static final Map<ComponentsCacheKey, List<Pair<Material, Long>>> COMPONENTS_CACHE = new ConcurrentHashMap<>();
+    private static final Map<RenderCacheKey, CachedAlloyTooltipData> RENDER_CACHE = new ConcurrentHashMap<>();
 
     public static void invalidateComponentsCache() {
         COMPONENTS_CACHE.clear();
@@ -247,6 +259,31 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
         AsyncCalculationManager.clearFutures();
     }
 
+    /**
+     * 只失效指定材料的渲染缓存，供增量重载使用
+     */
+    public static void invalidateAlloyRenderCache(Collection<Material> materials) {
+        RENDER_CACHE.keySet().removeIf(key -> materials.contains(key.material()));
+        AsyncCalculationManager.clearRenderFutures(materials);
+    }
+
+    /**
+     * 只失效成分颜色或化学式用到该材料颜色的合金渲染缓存，供流体纹理平均色就绪时使用
+     */
+    public static void invalidateAlloyRenderCacheForColor(Material changed) {
+        final Set<Material> affected = new HashSet<>();
+        for (final var entry : RENDER_CACHE.entrySet()) {
+            if (affected.contains(entry.getKey().material())) continue;
+            for (final var component : entry.getValue().components()) {
+                if (component.getA() != null && MoleculeColorize.dependsOnColor(component.getA(), changed)) {
+                    affected.add(entry.getKey().material());
+                    break;
+                }
+            }
+        }
+        if (!affected.isEmpty()) invalidateAlloyRenderCache(affected);
+    }
+
     public static void cleanupCaches() {
         // 清理组件缓存
         if (COMPONENTS_CACHE.size() > MAX_COMPONENTS_CACHE_SIZE) {
@@ -293,10 +330,7 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
     }
 
     public static void precomputeAlloyRenderCache(Map<Material, Optional<List<Pair<Material, Long>>>> alloys) {
-        // 先清理缓存，避免内存占用过高
-        invalidateAlloyRenderCache();
-
-        // 预计算合金材料
+        // 预计算合金材料，重载后未变化的条目直接命中缓存
         for (final var entry : alloys.entrySet()) {
             final var material = entry.getKey();
             if (Objects.isNull(material)) continue;
@@ -331,10 +365,13 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
             return cached;
         }
         cacheMisses++;
+        final int generation = MoleculeColorize.colorGeneration();
         final var built = buildCachedData(rawComponents, expanded);
-        RENDER_CACHE.put(key, built);
-        // 清理缓存，防止内存占用过高
-        cleanupCaches();
+        if (generation == MoleculeColorize.colorGeneration()) {
+            RENDER_CACHE.put(key, built);
+            // 清理缓存，防止内存占用过高
+            cleanupCaches();
+        }
         return built;
     }
 
@@ -381,7 +418,7 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
             final var percentage = count * 100d / total;
             final var percentageString = percentage < 0.1 ? "<0.1%" : "%.1f%%".formatted(percentage);
             final var text = Component.literal(percentageString + " ")
-                    .append(material != null ? MoleculeColorize.coloredFormula(new MaterialStack(material, 1), true) :
+                    .append(material != null ? MoleculeColorize.coloredFormula(material) :
                             Component.literal("其他"));
             final var width = font.width(text);
 
@@ -600,7 +637,8 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
                 int textY = ym - font.lineHeight / 2;
                 guiGraphics.drawString(font, Component.literal(loadingText), textX, textY, 0xffffffff);
             } else if (total > 0) {
-                // 使用完整的渲染方式
+                // 饼图扫描线与引线写入同一批次，一次提交
+                final var batch = QuadBatch.begin(guiGraphics);
                 for (final var scanline : pieScanlines) {
                     final int yPos = ym + scanline.y;
                     if (!scanline.segments.isEmpty()) {
@@ -615,13 +653,13 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
                                         currentSegment.color());
                             } else {
                                 // 绘制当前线段并开始新的线段
-                                guiGraphics.fill(xm + currentSegment.startX(), yPos, xm + currentSegment.endX() + 1,
+                                batch.fill(xm + currentSegment.startX(), yPos, xm + currentSegment.endX() + 1,
                                         yPos + 1, currentSegment.color());
                                 currentSegment = nextSegment;
                             }
                         }
                         // 绘制最后一个线段
-                        guiGraphics.fill(xm + currentSegment.startX(), yPos, xm + currentSegment.endX() + 1,
+                        batch.fill(xm + currentSegment.startX(), yPos, xm + currentSegment.endX() + 1,
                                 yPos + 1,
                                 currentSegment.color());
                     }
@@ -634,7 +672,6 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
                     final var textStart = textStarts.get(i).getA();
                     final var topY = ym + textStart.y;
                     final var centerY = topY + font.lineHeight / 2;
-                    final var startX = xm + textStart.x;
                     final var cx = xm +
                             (int) (Math.sin(center) * 0.9 * radius);
                     final var cy = ym -
@@ -642,9 +679,15 @@ public record AlloyTooltipComponent(Material material, List<Pair<Material, Long>
                     final var left = center > Math.PI;
                     final var ex = xm + (left ? -1 : 1) * (radius + 10);
 
-                    GraphicalUtils.drawLine(cx, cy, cx, centerY, whiteColor, guiGraphics);
-                    GraphicalUtils.drawLine(cx, centerY, ex, centerY, whiteColor, guiGraphics);
-                    guiGraphics.drawString(font, textComponents.get(i), startX, topY, whiteColor);
+                    GraphicalUtils.drawLine(cx, cy, cx, centerY, whiteColor, batch);
+                    GraphicalUtils.drawLine(cx, centerY, ex, centerY, whiteColor, batch);
+                }
+                batch.end();
+
+                for (int i = 0; i < components.size(); i++) {
+                    final var textStart = textStarts.get(i).getA();
+                    guiGraphics.drawString(font, textComponents.get(i), xm + textStart.x, ym + textStart.y,
+                            whiteColor);
                 }
             }
         }
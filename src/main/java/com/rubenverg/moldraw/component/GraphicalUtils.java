@@ -17,6 +17,16 @@ public class GraphicalUtils {
         void draw(int x, int y);
     }
 
+    /**
+     * 矩形填充目标，签名与 {@link GuiGraphics#fill(int, int, int, int, int)} 一致，
+     * 既可以直接绘制，也可以录制下来重放
+     */
+    @FunctionalInterface
+    public interface Filler {
+
+        void fill(int x0, int y0, int x1, int y1, int color);
+    }
+
     @FunctionalInterface
     public interface PixelPredicate {
 
@@ -39,6 +49,55 @@ public class GraphicalUtils {
         }
     }
 
+    /**
+     * 行程合并光栅化：把连续、同色的像素合并为水平或垂直的行程，每个行程只调用一次 {@link Filler#fill}。
+     * 重复的像素直接忽略。用完后必须调用 {@link #flush()}。
+     */
+    public static final class SpanMerger implements DrawPixel {
+
+        private final IntBinaryOperator color;
+        private final Filler filler;
+        private boolean pending;
+        private int minX, minY, maxX, maxY, runColor;
+
+        public SpanMerger(IntBinaryOperator color, Filler filler) {
+            this.color = color;
+            this.filler = filler;
+        }
+
+        @Override
+        public void draw(int x, int y) {
+            final int c = color.applyAsInt(x, y);
+            if (pending && c == runColor) {
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) return;
+                // 单个像素的行程可以向任一方向延伸，否则只沿原方向延伸
+                final boolean horizontal = minY == maxY && (minX != maxX || y == minY);
+                final boolean vertical = minX == maxX && (minY != maxY || x == minX);
+                if (horizontal && y == minY && (x == minX - 1 || x == maxX + 1)) {
+                    minX = Math.min(minX, x);
+                    maxX = Math.max(maxX, x);
+                    return;
+                }
+                if (vertical && x == minX && (y == minY - 1 || y == maxY + 1)) {
+                    minY = Math.min(minY, y);
+                    maxY = Math.max(maxY, y);
+                    return;
+                }
+            }
+            flush();
+            pending = true;
+            minX = maxX = x;
+            minY = maxY = y;
+            runColor = c;
+        }
+
+        public void flush() {
+            if (!pending) return;
+            filler.fill(minX, minY, maxX + 1, maxY + 1, runColor);
+            pending = false;
+        }
+    }
+
     public static boolean alwaysDraw(int _x, int _y, int _count) {
         return true;
     }
@@ -66,8 +125,14 @@ public class GraphicalUtils {
 
     public static void plotLine(int x0, int y0, int x1, int y1, PixelPredicate shouldDraw, IntBinaryOperator color,
                                 GuiGraphics graphics) {
-        plotLine(x0, y0, x1, y1, shouldDraw,
-                (xp, yp) -> graphics.fill(xp, yp, xp + 1, yp + 1, color.applyAsInt(xp, yp)));
+        plotLine(x0, y0, x1, y1, shouldDraw, color, graphics::fill);
+    }
+
+    public static void plotLine(int x0, int y0, int x1, int y1, PixelPredicate shouldDraw, IntBinaryOperator color,
+                                Filler filler) {
+        final var spans = new SpanMerger(color, filler);
+        plotLine(x0, y0, x1, y1, shouldDraw, spans);
+        spans.flush();
     }
 
     public static void plotCircle(int xm, int ym, int r, PixelPredicate shouldDraw, DrawPixel doDraw) {
@@ -88,41 +153,60 @@ public class GraphicalUtils {
 
     public static void plotCircle(int xm, int ym, int r, PixelPredicate shouldDraw, IntBinaryOperator color,
                                   GuiGraphics graphics) {
-        plotCircle(xm, ym, r, shouldDraw, (xp, yp) -> graphics.fill(xp, yp, xp + 1, yp + 1, color.applyAsInt(xp, yp)));
+        plotCircle(xm, ym, r, shouldDraw, color, graphics::fill);
+    }
+
+    public static void plotCircle(int xm, int ym, int r, PixelPredicate shouldDraw, IntBinaryOperator color,
+                                  Filler filler) {
+        final var spans = new SpanMerger(color, filler);
+        plotCircle(xm, ym, r, shouldDraw, spans);
+        spans.flush();
     }
 
     /**
      * 批量绘制水平线段
      */
     public static void drawHorizontalLine(int x0, int x1, int y, int color, GuiGraphics graphics) {
+        drawHorizontalLine(x0, x1, y, color, graphics::fill);
+    }
+
+    public static void drawHorizontalLine(int x0, int x1, int y, int color, Filler filler) {
         int minX = Math.min(x0, x1);
         int maxX = Math.max(x0, x1);
-        graphics.fill(minX, y, maxX + 1, y + 1, color);
+        filler.fill(minX, y, maxX + 1, y + 1, color);
     }
 
     /**
      * 批量绘制垂直线段
      */
     public static void drawVerticalLine(int x, int y0, int y1, int color, GuiGraphics graphics) {
+        drawVerticalLine(x, y0, y1, color, graphics::fill);
+    }
+
+    public static void drawVerticalLine(int x, int y0, int y1, int color, Filler filler) {
         int minY = Math.min(y0, y1);
         int maxY = Math.max(y0, y1);
-        graphics.fill(x, minY, x + 1, maxY + 1, color);
+        filler.fill(x, minY, x + 1, maxY + 1, color);
     }
 
     /**
      * 批量绘制线段，根据线段方向选择最佳绘制方式
      */
     public static void drawLine(int x0, int y0, int x1, int y1, int color, GuiGraphics graphics) {
+        drawLine(x0, y0, x1, y1, color, graphics::fill);
+    }
+
+    public static void drawLine(int x0, int y0, int x1, int y1, int color, Filler filler) {
         if (x0 == x1) {
             // 垂直线
-            drawVerticalLine(x0, y0, y1, color, graphics);
+            drawVerticalLine(x0, y0, y1, color, filler);
         } else if (y0 == y1) {
             // 水平线
-            drawHorizontalLine(x0, x1, y0, color, graphics);
+            drawHorizontalLine(x0, x1, y0, color, filler);
         } else {
             // 斜线，使用原有方法
             final IntBinaryOperator colorFunc = (xp, yp) -> color;
-            plotLine(x0, y0, x1, y1, GraphicalUtils::alwaysDraw, colorFunc, graphics);
+            plotLine(x0, y0, x1, y1, GraphicalUtils::alwaysDraw, colorFunc, filler);
         }
     }
 }
@@ -0,0 +1,82 @@
+package com.rubenverg.moldraw.component;
+
+import net.minecraft.client.gui.Font;
+import net.minecraft.util.Mth;
+
+import com.rubenverg.moldraw.molecule.CompiledMolecule;
+
+/**
+ * 分子标签在某个字体下的排版表：每个标签的字符串与宽度，以及每个原子五个标签相对于原子屏幕位置的偏移。
+ * 只取决于分子与字体，文本绘制时直接查表，不再重新拼接字符串或测量宽度。
+ */
+public final class LabelLayout {
+
+    /** 主元素标签，排在四个方向的附加标签之后 */
+    public static final int MAIN = 4;
+    public static final int LABELS_PER_SLOT = 5;
+
+    public final Font font;
+    public final CompiledMolecule compiled;
+    /** 按 {@link CompiledMolecule#labels} 下标 */
+    public final String[] text;
+    public final boolean[] visible;
+    /** 标签占据的宽度，不可见标签为 0 */
+    public final int[] width;
+    /** 按槽位每个标签 dx, dy 两个 int，标签下标为 {@link CompiledMolecule#ABOVE} 等或 {@link #MAIN} */
+    public final int[] offsets;
+
+    LabelLayout(CompiledMolecule compiled, Font font) {
+        this.font = font;
+        this.compiled = compiled;
+        final int labelCount = compiled.labels.length;
+        text = new String[labelCount];
+        visible = new boolean[labelCount];
+        width = new int[labelCount];
+        final var textWidth = new int[labelCount];
+        for (int i = 0; i < labelCount; i++) {
+            final var label = compiled.labels[i];
+            text[i] = label.toString();
+            visible[i] = !label.element().invisible;
+            textWidth[i] = label.width(font, font::width);
+            width[i] = visible[i] ? textWidth[i] : 0;
+        }
+
+        offsets = new int[compiled.atomCount * LABELS_PER_SLOT * 2];
+        for (int slot = 0; slot < compiled.atomCount; slot++) {
+            final int w = textWidth[compiled.elementIds[slot]];
+            offset(slot, MAIN, Mth.floor(-(float) w / 2) + 1, 1);
+            final int right = compiled.attachments[slot * 4 + CompiledMolecule.RIGHT];
+            if (right != CompiledMolecule.NONE) offset(slot, CompiledMolecule.RIGHT, Mth.floor((float) w / 2) + 1, 1);
+            final int left = compiled.attachments[slot * 4 + CompiledMolecule.LEFT];
+            if (left != CompiledMolecule.NONE)
+                offset(slot, CompiledMolecule.LEFT, -textWidth[left] + Mth.floor(-(float) w / 2), 1);
+            final int above = compiled.attachments[slot * 4 + CompiledMolecule.ABOVE];
+            if (above != CompiledMolecule.NONE) offset(slot, CompiledMolecule.ABOVE,
+                    Mth.floor(-(float) textWidth[above] / 2) + 1, -font.lineHeight + 1);
+            final int below = compiled.attachments[slot * 4 + CompiledMolecule.BELOW];
+            if (below != CompiledMolecule.NONE) offset(slot, CompiledMolecule.BELOW,
+                    Mth.floor(-(float) textWidth[below] / 2) + 1, font.lineHeight + 1);
+        }
+    }
+
+    private void offset(int slot, int label, int dx, int dy) {
+        offsets[(slot * LABELS_PER_SLOT + label) * 2] = dx;
+        offsets[(slot * LABELS_PER_SLOT + label) * 2 + 1] = dy;
+    }
+
+    /**
+     * @param label {@link CompiledMolecule#ABOVE} 等或 {@link #MAIN}
+     * @return 标签在 {@link CompiledMolecule#labels} 中的下标，没有时为 {@link CompiledMolecule#NONE}
+     */
+    public int labelId(int slot, int label) {
+        return label == MAIN ? compiled.elementIds[slot] : compiled.attachments[slot * 4 + label];
+    }
+
+    public int dx(int slot, int label) {
+        return offsets[(slot * LABELS_PER_SLOT + label) * 2];
+    }
+
+    public int dy(int slot, int label) {
+        return offsets[(slot * LABELS_PER_SLOT + label) * 2 + 1];
+    }
+}
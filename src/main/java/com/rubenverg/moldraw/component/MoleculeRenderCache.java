@@ -0,0 +1,104 @@
+package com.rubenverg.moldraw.component;
+
+import net.minecraft.client.gui.Font;
+
+import com.rubenverg.moldraw.molecule.CompiledMolecule;
+import com.rubenverg.moldraw.molecule.Element;
+import com.rubenverg.moldraw.molecule.Molecule;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Predicate;
+
+/**
+ * 分子渲染缓存，按分子实例弱引用保存。分子注册表淘汰分子后对应条目随之回收，重载替换的分子立即移除；
+ * 字体资源变化时全部清空。只在渲染线程访问。
+ */
+public final class MoleculeRenderCache {
+
+    /**
+     * 静态图像像素的缓存键：字体决定标签宽度与行高，比例决定坐标。
+     * 颜色变化时由 {@link com.rubenverg.moldraw.MoleculeColorize} 直接失效用到该颜色的图像。
+     */
+    public record ImageKey(Font font, int scale) {}
+
+    private static final Map<Molecule, MoleculeRenderCache> CACHE = new WeakHashMap<>();
+
+    private @Nullable ImageKey imageKey;
+    private @Nullable PixelRuns imageRuns;
+    private @Nullable LabelLayout labelLayout;
+    private @Nullable TooltipLayout tooltipLayout;
+
+    private MoleculeRenderCache() {}
+
+    public static MoleculeRenderCache of(Molecule molecule) {
+        return CACHE.computeIfAbsent(molecule, m -> new MoleculeRenderCache());
+    }
+
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    /**
+     * 移除该分子的渲染缓存与纹理，供重载时被替换的分子使用
+     */
+    public static void remove(Molecule molecule) {
+        CACHE.remove(molecule);
+        MoleculeTextureCache.remove(molecule);
+    }
+
+    /**
+     * 丢弃所有烘焙的图像及其纹理，排版保留
+     */
+    public static void clearImages() {
+        for (final var cache : CACHE.values()) cache.imageRuns(null, null);
+        MoleculeTextureCache.clear();
+    }
+
+    /**
+     * 丢弃含有指定元素的分子的烘焙图像及其纹理
+     */
+    public static void invalidateImages(Predicate<Element> usesColor) {
+        for (final var entry : CACHE.entrySet()) {
+            if (entry.getValue().imageRuns == null) continue;
+            for (final var label : entry.getKey().compiled().labels) {
+                if (usesColor.test(label.element())) {
+                    entry.getValue().imageRuns(null, null);
+                    MoleculeTextureCache.remove(entry.getKey());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 与键匹配的图像像素，没有时为 {@code null}
+     */
+    public @Nullable PixelRuns imageRuns(ImageKey key) {
+        return key.equals(imageKey) ? imageRuns : null;
+    }
+
+    public void imageRuns(@Nullable ImageKey key, @Nullable PixelRuns runs) {
+        this.imageKey = key;
+        this.imageRuns = runs;
+    }
+
+    /**
+     * 分子在该字体下的标签排版，字体或编译形式变化时重建
+     */
+    public LabelLayout labelLayout(CompiledMolecule compiled, Font font) {
+        if (labelLayout == null || labelLayout.font != font || labelLayout.compiled != compiled)
+            labelLayout = new LabelLayout(compiled, font);
+        return labelLayout;
+    }
+
+    /**
+     * 分子在该比例下的提示框布局，比例或编译形式变化时重建
+     */
+    public TooltipLayout tooltipLayout(CompiledMolecule compiled, int scale) {
+        if (tooltipLayout == null || tooltipLayout.scale != scale || tooltipLayout.compiled != compiled)
+            tooltipLayout = new TooltipLayout(compiled, scale);
+        return tooltipLayout;
+    }
+}
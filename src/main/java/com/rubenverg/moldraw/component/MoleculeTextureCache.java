@@ -0,0 +1,91 @@
+package com.rubenverg.moldraw.component;
+
+import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.client.renderer.GameRenderer;
+import net.minecraft.client.renderer.texture.DynamicTexture;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferUploader;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.Tesselator;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import com.rubenverg.moldraw.molecule.Molecule;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 不旋转分子的离屏纹理缓存：把烘焙好的像素行程写入 {@link DynamicTexture}，之后每帧只绘制一个四边形。
+ * 纹理按 GUI 像素光栅化并以最近邻采样绘制，因此与逐像素填充的结果一致。
+ * 最近最少使用的纹理超出上限时释放，分子颜色变化或分子被替换时释放对应的纹理，字体资源变化时全部释放。
+ * 只在渲染线程访问。
+ */
+public final class MoleculeTextureCache {
+
+    private static final int MAX_TEXTURES = 32;
+
+    private record Key(Molecule molecule, MoleculeRenderCache.ImageKey image) {}
+
+    private record Baked(DynamicTexture texture, int x, int y, int width, int height) {}
+
+    private static final Map<Key, Baked> TEXTURES = new LinkedHashMap<>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Baked> eldest) {
+            if (size() <= MAX_TEXTURES) return false;
+            eldest.getValue().texture().close();
+            return true;
+        }
+    };
+
+    private MoleculeTextureCache() {}
+
+    public static void draw(Molecule molecule, MoleculeRenderCache.ImageKey imageKey, PixelRuns runs,
+                            GuiGraphics graphics, int x, int y) {
+        if (runs.size() == 0) return;
+        final var key = new Key(molecule, imageKey);
+        var baked = TEXTURES.get(key);
+        if (baked == null) {
+            baked = bake(runs);
+            TEXTURES.put(key, baked);
+        }
+        // 立即绘制前先提交 GuiGraphics 中缓冲的内容，保证绘制顺序与提交顺序一致
+        graphics.flush();
+        final float x0 = x + baked.x(), y0 = y + baked.y(), x1 = x0 + baked.width(), y1 = y0 + baked.height();
+        RenderSystem.setShaderTexture(0, baked.texture().getId());
+        RenderSystem.setShader(GameRenderer::getPositionTexShader);
+        RenderSystem.enableBlend();
+        RenderSystem.defaultBlendFunc();
+        final var matrix = graphics.pose().last().pose();
+        final var builder = Tesselator.getInstance().getBuilder();
+        builder.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.POSITION_TEX);
+        builder.vertex(matrix, x0, y0, 0).uv(0, 0).endVertex();
+        builder.vertex(matrix, x0, y1, 0).uv(0, 1).endVertex();
+        builder.vertex(matrix, x1, y1, 0).uv(1, 1).endVertex();
+        builder.vertex(matrix, x1, y0, 0).uv(1, 0).endVertex();
+        BufferUploader.drawWithShader(builder.end());
+        RenderSystem.disableBlend();
+    }
+
+    private static Baked bake(PixelRuns runs) {
+        final int width = runs.maxX - runs.minX, height = runs.maxY - runs.minY;
+        final var image = new NativeImage(width, height, true);
+        runs.paint(image, -runs.minX, -runs.minY);
+        // DynamicTexture 默认不开启线性过滤，构造时即上传
+        return new Baked(new DynamicTexture(image), runs.minX, runs.minY, width, height);
+    }
+
+    public static void remove(Molecule molecule) {
+        TEXTURES.entrySet().removeIf(entry -> {
+            if (entry.getKey().molecule() != molecule) return false;
+            entry.getValue().texture().close();
+            return true;
+        });
+    }
+
+    public static void clear() {
+        TEXTURES.values().forEach(baked -> baked.texture().close());
+        TEXTURES.clear();
+    }
+}
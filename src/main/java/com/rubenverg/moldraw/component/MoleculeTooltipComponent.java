@@ -10,19 +10,14 @@ import net.minecraft.client.renderer.MultiBufferSource;
 import net.minecraft.util.Mth;
 import net.minecraft.world.inventory.tooltip.TooltipComponent;
 
-import com.mojang.datafixers.util.Pair;
 import com.rubenverg.moldraw.MolDrawConfig;
 import com.rubenverg.moldraw.molecule.*;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
 import org.joml.*;
 
 import java.lang.Math;
 import java.util.*;
 import java.util.List;
 import java.util.function.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import javax.annotation.ParametersAreNonnullByDefault;
 
@@ -39,67 +34,16 @@ public record MoleculeTooltipComponent(
         public static int DEBUG_COLOR = MathUtils.chatFormattingColor(ChatFormatting.RED);
 
         private final Molecule molecule;
-        private final Vector2i xySize;
-        private final Vector2f xyStart;
-        private final boolean atomAtTop;
-        private final boolean atomAtTopTop;
-        private final boolean atomAtBotBot;
-        private final boolean atomAtLefLef;
-        private final boolean parenAtLef;
-        private final List<Vector3f> centers;
-        private final Map<Element.Counted, Integer> elementWidths = new HashMap<>();
+        private final CompiledMolecule compiled;
+        private final TooltipLayout layout;
+        // 文本绘制用的临时矩阵，避免每帧为每个标签分配
+        private final Matrix4f textMatrix = new Matrix4f();
 
-        private UnaryOperator<Vector2f> toScaledFactory(int lineHeight) {
-            return xy -> {
-                var result = new Vector2f();
-                new Vector2f(xy.x, xy.y).sub(xyStart, result);
-                result.mul(MolDrawConfig.INSTANCE.molecule.moleculeScale);
-                return new Vector2f(result.x + 8 + (atomAtLefLef ? 12 : 0) + (parenAtLef ? 6 : 0),
-                        -result.y + (atomAtTopTop ? lineHeight * 3 / 2f : atomAtTop ? lineHeight / 2f : 3));
-            };
-        }
-
-        private Function<Atom, Pair<Vector2f, Vector2f>> sizeOfAtomFactory(int lineHeight) {
-            return atom -> {
-                float x0 = 0, x1 = 0, y0 = 0, y1 = 0;
-                x0 += elementWidths.getOrDefault(atom.element(), 0) / 2f;
-                x1 += elementWidths.getOrDefault(atom.element(), 0) / 2f;
-                y0 += 1;
-                y1 += lineHeight + 1;
-                if (atom.right().isPresent()) {
-                    x1 += 1 + elementWidths.getOrDefault(atom.right().get(), 0);
-                }
-                if (atom.left().isPresent()) {
-                    x0 += 1 + elementWidths.getOrDefault(atom.left().get(), 0);
-                }
-                if (atom.above().isPresent()) {
-                    y0 += 1 + lineHeight;
-                    x0 = Math.max(x0, elementWidths.getOrDefault(atom.above().get(), 0) / 2f);
-                    x1 = Math.max(x1, elementWidths.getOrDefault(atom.above().get(), 0) / 2f);
-                }
-                if (atom.below().isPresent()) {
-                    y1 += 1 + lineHeight;
-                    x0 = Math.max(x0, elementWidths.getOrDefault(atom.below().get(), 0) / 2f);
-                    x1 = Math.max(x1, elementWidths.getOrDefault(atom.below().get(), 0) / 2f);
-                }
-                return new Pair<>(new Vector2f(x0, y0), new Vector2f(x1, y1));
-            };
-        }
-
-        private Vector2f project(Vector3fc xyz, int group) {
-            final var vec = new Vector3f(xyz);
-            if (MolDrawConfig.INSTANCE.molecule.spinMolecules && group >= 0 && group < molecule.spinGroups().size()) {
-                final var freq = 1000 /
-                        (molecule.spinGroups().getFloat(group) * MolDrawConfig.INSTANCE.molecule.spinSpeedMultiplier);
-                vec.sub(centers.get(group));
-                vec.mul(new Matrix3f().rotationY(System.currentTimeMillis() % (int) freq / freq * Mth.TWO_PI));
-                vec.add(centers.get(group));
-            }
-            return new Vector2f(vec.x, vec.y);
-        }
+        private static final int[] LABEL_ORDER = { LabelLayout.MAIN, CompiledMolecule.RIGHT, CompiledMolecule.LEFT,
+                CompiledMolecule.ABOVE, CompiledMolecule.BELOW };
 
-        private Function<Vector3f, Vector2f> toScaledProjectedFactory(int lineHeight, int group) {
-            return xyz -> toScaledFactory(lineHeight).apply(project(xyz, group));
+        private LabelLayout labelLayout(Font font) {
+            return MoleculeRenderCache.of(molecule).labelLayout(compiled, font);
         }
 
         /*
@@ -113,344 +57,253 @@ public record MoleculeTooltipComponent(
          */
 
         public Vector2i floored(Vector2fc vec) {
-            return new Vector2i((int) vec.x(), (int) vec.y());
+            return new Vector2i(Mth.floor(vec.x()), Mth.floor(vec.y()));
         }
 
         public ClientMoleculeTooltipComponent(MoleculeTooltipComponent component) {
             this.molecule = component.molecule();
-            final var bounds = molecule.bounds();
-            final Vector2f diff = new Vector2f();
-            bounds.getSecond().sub(bounds.getFirst(), diff);
-            diff.mul(MolDrawConfig.INSTANCE.molecule.moleculeScale);
-            diff.ceil();
-            this.xySize = new Vector2i((int) diff.x, (int) diff.y);
-            this.xyStart = new Vector2f(bounds.getFirst().x, bounds.getSecond().y);
-            this.atomAtTop = molecule.atoms().stream().anyMatch(atom -> {
-                final var distanceFromTop = Math.abs(xyStart.y - atom.position().y);
-                final var invisible = atom.isInvisible();
-                return distanceFromTop < 0.1 && !invisible;
-            });
-            this.atomAtTopTop = molecule.atoms().stream().anyMatch(atom -> {
-                final var distanceFromTop = Math.abs(xyStart.y - atom.position().y);
-                final var invisible = atom.isInvisible();
-                final var hasAbove = atom.above().isPresent();
-                return distanceFromTop < 0.1 && !invisible && hasAbove;
-            });
-            this.atomAtBotBot = molecule.atoms().stream().anyMatch(atom -> {
-                final var distanceFromBot = Math.abs(bounds.getFirst().y - atom.position().y);
-                final var invisible = atom.isInvisible();
-                final var hasBelow = atom.below().isPresent();
-                return distanceFromBot < 0.1 && !invisible && hasBelow;
-            });
-            this.atomAtLefLef = molecule.atoms().stream().anyMatch(atom -> {
-                final var distanceFromLef = Math.abs(bounds.getFirst().x - atom.position().x);
-                final var invisible = atom.isInvisible();
-                final var hasLef = atom.left().isPresent();
-                return distanceFromLef < 0.1 && !invisible && hasLef;
-            });
-            this.parenAtLef = molecule.atoms().stream().anyMatch(atom -> {
-                final var distanceFromLef = Math.abs(bounds.getFirst().x - atom.position().x);
-                if (distanceFromLef > 0.1) return false;
-                return molecule.contents().stream().anyMatch(el -> el instanceof Parens parens &&
-                        Arrays.stream(parens.atoms()).anyMatch(d -> d == atom.index()));
-            });
-            {
-                centers = molecule.spinGroups().doubleStream().mapToObj(freq -> new Vector3f(0, 0, 0)).toList();
-                final IntList counts = molecule.spinGroups().doubleStream().mapToObj(freq -> 0)
-                        .collect(Collectors.toCollection(IntArrayList::new));
-                for (final var elem : this.molecule.contents()) if (elem instanceof Atom atom) {
-                    if (atom.spinGroup() >= 0 && atom.spinGroup() < centers.size()) {
-                        centers.get(atom.spinGroup()).add(atom.position());
-                        counts.set(atom.spinGroup(), counts.getInt(atom.spinGroup()) + 1);
-                    }
-                }
-                IntStream.range(0, centers.size()).forEach(i -> centers.get(i).div(counts.getInt(i)));
-            }
+            this.compiled = molecule.compiled();
+            this.layout = MoleculeRenderCache.of(molecule).tooltipLayout(compiled,
+                    MolDrawConfig.INSTANCE.molecule.moleculeScale);
         }
 
         @Override
         public int getWidth(Font font) {
-            return xySize.x + 32 + (atomAtLefLef ? 12 : 0) + (parenAtLef ? 6 : 0);
+            return layout.width();
         }
 
         @Override
         public int getHeight() {
-            return xySize.y + 20 + (atomAtBotBot ? 10 : 0) + (atomAtTopTop ? 10 : 0);
+            return layout.height();
         }
 
         @Override
         public void renderText(Font font, int mouseX, int mouseY, Matrix4f matrix,
                                MultiBufferSource.BufferSource bufferSource) {
             final var defaultColor = configColor(null);
-            elementWidths.clear();
-            var mat = new Matrix4f(matrix);
-            for (final var elem : this.molecule.contents()) {
-                if (elem instanceof Atom atom) {
-                    final var xyPosition = floored(
-                            toScaledFactory(font.lineHeight).apply(project(atom.position(), atom.spinGroup())));
-                    final var translation = new Vector3f(xyPosition.x, xyPosition.y, 0);
-                    mat.translate(translation);
-                    final var width = font.width(atom.element().toString());
-                    final var centerTranslation = new Vector3f(Mth.floor(-(float) width / 2) + 1, 1, 0);
-                    mat.translate(centerTranslation);
-                    if (!atom.element().element().invisible) font.drawInBatch(atom.element().toString(), (float) mouseX,
-                            (float) mouseY, colorForElement(atom.element().element()), false, mat,
-                            bufferSource, Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
-                    mat.translate(centerTranslation.negate());
-                    mat.translate(translation.negate());
-                    elementWidths.put(atom.element(), atom.element().element().invisible ? 0 : width);
-                    if (atom.right().isPresent()) {
-                        final var rightTranslation = new Vector3f(xyPosition.x + Mth.floor((float) width / 2) + 1,
-                                xyPosition.y + 1, 0);
-                        mat.translate(rightTranslation);
-                        if (!atom.right().get().element().invisible) font.drawInBatch(atom.right().get().toString(),
-                                (float) mouseX, (float) mouseY, colorForElement(atom.right().get().element()), false,
-                                mat, bufferSource, Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
-                        elementWidths.put(atom.right().get(),
-                                atom.right().get().element().invisible ? 0 : font.width(atom.right().get().toString()));
-                        mat.translate(rightTranslation.negate());
-                    }
-                    if (atom.left().isPresent()) {
-                        final var leftWidth = font.width(atom.left().get().toString());
-                        final var leftTranslation = new Vector3f(
-                                xyPosition.x - leftWidth + Mth.floor(-(float) width / 2), xyPosition.y + 1, 0);
-                        mat.translate(leftTranslation);
-                        if (!atom.left().get().element().invisible) font.drawInBatch(atom.left().get().toString(),
-                                (float) mouseX, (float) mouseY, colorForElement(atom.left().get().element()), false,
-                                mat, bufferSource, Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
-                        elementWidths.put(atom.left().get(), atom.left().get().element().invisible ? 0 : leftWidth);
-                        mat.translate(leftTranslation.negate());
-                    }
-                    if (atom.above().isPresent()) {
-                        final var aboveWidth = font.width(atom.above().get().toString());
-                        final var aboveTranslation = new Vector3f(xyPosition.x + Mth.floor(-(float) aboveWidth / 2) + 1,
-                                xyPosition.y - font.lineHeight + 1, 0);
-                        mat.translate(aboveTranslation);
-                        if (!atom.above().get().element().invisible) font.drawInBatch(atom.above().get().toString(),
-                                (float) mouseX, (float) mouseY, colorForElement(atom.above().get().element()), false,
-                                mat, bufferSource, Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
-                        elementWidths.put(atom.above().get(), atom.above().get().element().invisible ? 0 : aboveWidth);
-                        mat.translate(aboveTranslation.negate());
-                    }
-                    if (atom.below().isPresent()) {
-                        final var belowWidth = font.width(atom.below().get().toString());
-                        final var belowTranslation = new Vector3f(xyPosition.x + Mth.floor(-(float) belowWidth / 2) + 1,
-                                xyPosition.y + font.lineHeight + 1, 0);
-                        mat.translate(belowTranslation);
-                        if (!atom.below().get().element().invisible) font.drawInBatch(atom.below().get().toString(),
-                                (float) mouseX, (float) mouseY, colorForElement(atom.below().get().element()), false,
-                                mat, bufferSource, Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
-                        elementWidths.put(atom.below().get(), atom.below().get().element().invisible ? 0 : belowWidth);
-                        mat.translate(belowTranslation.negate());
-                    }
-                    if (MolDrawConfig.INSTANCE.debugMode) {
-                        final var debugTranslation = new Vector3f(xyPosition.x - 5, xyPosition.y - 2, 3);
-                        mat.translate(debugTranslation);
-                        font.drawInBatch(Integer.toString(atom.index()), (float) mouseX, (float) mouseY, DEBUG_COLOR,
-                                false, mat, bufferSource, Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
-                        mat.translate(debugTranslation.negate());
-                    }
-                } else if (elem instanceof Parens pp) {
-                    final var bounds = this.molecule.subset(pp.atoms()).boundsWithSize(
-                            toScaledProjectedFactory(font.lineHeight, -1),
-                            sizeOfAtomFactory(font.lineHeight));
-                    final var xySub = new Vector2i((int) bounds.getSecond().x, (int) bounds.getSecond().y);
-                    xySub.add(7, -2);
-                    final var subTranslation = new Vector3f(xySub.x, xySub.y, 0);
-                    mat.translate(subTranslation);
-                    font.drawInBatch(pp.sub(), (float) mouseX, (float) mouseY, defaultColor, false, mat, bufferSource,
+            final var labels = labelLayout(font);
+            layout.updateProjection(font.lineHeight);
+            final var projected = layout.projected;
+            for (int i = 0; i < compiled.atomCount; i++) {
+                final int px = Mth.floor(projected[i * 2]), py = Mth.floor(projected[i * 2 + 1]);
+                for (final int label : LABEL_ORDER) {
+                    final int id = labels.labelId(i, label);
+                    if (id == CompiledMolecule.NONE || !labels.visible[id]) continue;
+                    textMatrix.set(matrix).translate(px + labels.dx(i, label), py + labels.dy(i, label), 0);
+                    font.drawInBatch(labels.text[id], (float) mouseX, (float) mouseY,
+                            colorForElement(compiled.labels[id].element()), false, textMatrix, bufferSource,
                             Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
-                    mat.translate(subTranslation.negate());
-                    final var xySup = new Vector2i((int) bounds.getSecond().x, (int) bounds.getFirst().y);
-                    xySup.add(7, -4);
-                    final var supTranslation = new Vector3f(xySup.x, xySup.y, 0);
-                    mat.translate(supTranslation);
-                    font.drawInBatch(pp.sup(), (float) mouseX, (float) mouseY, defaultColor, false, mat, bufferSource,
-                            Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
-                    mat.translate(supTranslation.negate());
+                }
+                if (MolDrawConfig.INSTANCE.debugMode) {
+                    textMatrix.set(matrix).translate(px - 5, py - 2, 3);
+                    font.drawInBatch(Integer.toString(compiled.indices[i]), (float) mouseX, (float) mouseY,
+                            DEBUG_COLOR, false, textMatrix, bufferSource, Font.DisplayMode.NORMAL, 0,
+                            LightTexture.FULL_BRIGHT);
                 }
             }
+            layout.updateGeometry(labels);
+            final var parensBounds = layout.parensBounds;
+            for (int pi = 0; pi < compiled.parens.length; pi++) {
+                final var pp = compiled.parens[pi];
+                final int maxX = Mth.floor(parensBounds[pi * 4 + 2]);
+                textMatrix.set(matrix).translate(maxX + 7, Mth.floor(parensBounds[pi * 4 + 3]) - 2, 0);
+                font.drawInBatch(pp.sub(), (float) mouseX, (float) mouseY, defaultColor, false, textMatrix,
+                        bufferSource, Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
+                textMatrix.set(matrix).translate(maxX + 7, Mth.floor(parensBounds[pi * 4 + 1]) - 4, 0);
+                font.drawInBatch(pp.sup(), (float) mouseX, (float) mouseY, defaultColor, false, textMatrix,
+                        bufferSource, Font.DisplayMode.NORMAL, 0, LightTexture.FULL_BRIGHT);
+            }
         }
 
         @Override
         public void renderImage(Font font, int x, int y, GuiGraphics guiGraphics) {
+            // 不旋转时图像只取决于分子、比例、字体与颜色，录制一次后按行程重放
+            if (MolDrawConfig.INSTANCE.molecule.spinMolecules && compiled.spinFrequencies.length > 0) {
+                final var batch = QuadBatch.begin(guiGraphics);
+                drawImage(font, x, y, batch);
+                batch.end();
+                return;
+            }
+            final var cache = MoleculeRenderCache.of(molecule);
+            final var key = new MoleculeRenderCache.ImageKey(font, layout.scale);
+            var runs = cache.imageRuns(key);
+            if (runs == null) {
+                final var recorder = new PixelRuns.Recorder();
+                drawImage(font, 0, 0, recorder);
+                runs = recorder.build();
+                cache.imageRuns(key, runs);
+            }
+            if (MolDrawConfig.INSTANCE.molecule.cacheMoleculeTextures)
+                MoleculeTextureCache.draw(molecule, key, runs, guiGraphics, x, y);
+            else {
+                final var batch = QuadBatch.begin(guiGraphics);
+                runs.draw(batch, x, y);
+                batch.end();
+            }
+        }
+
+        private void drawImage(Font font, int x, int y, GraphicalUtils.Filler filler) {
             final var defaultColor = configColor(null);
-            final var ts = toScaledFactory(font.lineHeight);
-            for (final var elem : this.molecule.contents()) {
-                if (elem instanceof Bond bond) {
-                    if (Objects.isNull(this.molecule.getAtom(bond.a())) ||
-                            Objects.isNull(this.molecule.getAtom(bond.b())))
-                        continue;
-                    final var atomA = this.molecule.getAtom(bond.a()).orElseThrow();
-                    final var atomAWidth = elementWidths.get(atomA.element());
-                    final var atomAAbove = atomA.above().map(elementWidths::get);
-                    final var atomARight = atomA.right().map(elementWidths::get);
-                    final var atomABelow = atomA.below().map(elementWidths::get);
-                    final var atomALeft = atomA.left().map(elementWidths::get);
-                    final var atomAInvisible = atomA.isInvisible();
-                    final var atomB = this.molecule.getAtom(bond.b()).orElseThrow();
-                    final var atomBWidth = elementWidths.get(atomB.element());
-                    final var atomBAbove = atomB.above().map(elementWidths::get);
-                    final var atomBRight = atomB.right().map(elementWidths::get);
-                    final var atomBBelow = atomB.below().map(elementWidths::get);
-                    final var atomBLeft = atomB.left().map(elementWidths::get);
-                    final var atomBInvisible = atomB.isInvisible();
-                    final var start = floored(ts.apply(project(atomA.position(), atomA.spinGroup())));
-                    start.add(x, y);
-                    start.add(0, font.lineHeight / 2);
-                    final var end = floored(ts.apply(project(atomB.position(), atomB.spinGroup())));
-                    end.add(x, y);
-                    end.add(0, font.lineHeight / 2);
-                    final GraphicalUtils.PixelPredicate notCloseToAtom = (xt, yt, _c) -> {
-                        if (atomAInvisible && atomBInvisible)
-                            return true;
-                        Vector2ic t = new Vector2i(xt, yt);
-                        var diff = new Vector2i();
-                        start.sub(t, diff);
-                        diff.absolute();
-                        if (diff.x < atomAWidth * 2 / 3 && (!atomAInvisible && diff.y < font.lineHeight * 2 / 3))
-                            return false;
-                        if (atomAAbove.isPresent() && diff.x < atomAAbove.get() * 2 / 3 &&
-                                Math.abs((start.y - font.lineHeight - 1) - yt) < font.lineHeight * 2 / 3)
-                            return false;
-                        if (atomABelow.isPresent() && diff.x < atomABelow.get() * 2 / 3 &&
-                                Math.abs((start.y + font.lineHeight + 1) - yt) < font.lineHeight * 2 / 3)
-                            return false;
-                        if (atomARight.isPresent() &&
-                                Math.abs((start.x + (atomAWidth + atomARight.get()) / 2 + 1) - xt) <
-                                        atomARight.get() * 2 / 3 &&
-                                diff.y < font.lineHeight * 2 / 3)
-                            return false;
-                        if (atomALeft.isPresent() && Math.abs((start.x - (atomAWidth + atomALeft.get()) / 2 - 1) - xt) <
-                                atomALeft.get() * 2 / 3 && diff.y < font.lineHeight * 2 / 3)
-                            return false;
-                        end.sub(t, diff);
-                        diff.absolute();
-                        if (diff.x < atomBWidth * 2 / 3 && (!atomBInvisible && diff.y < font.lineHeight * 2 / 3))
-                            return false;
-                        if (atomBAbove.isPresent() && diff.x < atomBAbove.get() * 2 / 3 &&
-                                Math.abs((end.y - font.lineHeight - 1) - yt) < font.lineHeight * 2 / 3)
-                            return false;
-                        if (atomBBelow.isPresent() && diff.x < atomBBelow.get() * 2 / 3 &&
-                                Math.abs((end.y + font.lineHeight + 1) - yt) < font.lineHeight * 2 / 3)
-                            return false;
-                        if (atomBRight.isPresent() &&
-                                Math.abs((end.x + (atomBWidth + atomBRight.get()) / 2 + 1) - xt) <
-                                        atomBRight.get() * 2 / 3 &&
-                                diff.y < font.lineHeight * 2 / 3)
-                            return false;
-                        if (atomBLeft.isPresent() && Math.abs((end.x - (atomBWidth + atomBLeft.get()) / 2 - 1) - xt) <
-                                atomBLeft.get() * 2 / 3 && diff.y < font.lineHeight * 2 / 3)
-                            return false;
+            final var labels = labelLayout(font);
+            layout.updateProjection(font.lineHeight);
+            for (int bi = 0; bi < compiled.bonds.length; bi++) {
+                final int slotA = compiled.bondA[bi], slotB = compiled.bondB[bi];
+                if (slotA == CompiledMolecule.NONE || slotB == CompiledMolecule.NONE) continue;
+                final var bond = compiled.bonds[bi];
+                final int atomAWidth = labels.width[compiled.elementIds[slotA]];
+                final int atomAAbove = TooltipLayout.attachmentWidth(labels, slotA, CompiledMolecule.ABOVE);
+                final int atomARight = TooltipLayout.attachmentWidth(labels, slotA, CompiledMolecule.RIGHT);
+                final int atomABelow = TooltipLayout.attachmentWidth(labels, slotA, CompiledMolecule.BELOW);
+                final int atomALeft = TooltipLayout.attachmentWidth(labels, slotA, CompiledMolecule.LEFT);
+                final var atomAInvisible = compiled.invisible[slotA];
+                final int atomBWidth = labels.width[compiled.elementIds[slotB]];
+                final int atomBAbove = TooltipLayout.attachmentWidth(labels, slotB, CompiledMolecule.ABOVE);
+                final int atomBRight = TooltipLayout.attachmentWidth(labels, slotB, CompiledMolecule.RIGHT);
+                final int atomBBelow = TooltipLayout.attachmentWidth(labels, slotB, CompiledMolecule.BELOW);
+                final int atomBLeft = TooltipLayout.attachmentWidth(labels, slotB, CompiledMolecule.LEFT);
+                final var atomBInvisible = compiled.invisible[slotB];
+                final var start = layout.projectedSlot(slotA);
+                start.add(x, y);
+                start.add(0, font.lineHeight / 2);
+                final var end = layout.projectedSlot(slotB);
+                end.add(x, y);
+                end.add(0, font.lineHeight / 2);
+                final GraphicalUtils.PixelPredicate notCloseToAtom = (xt, yt, _c) -> {
+                    if (atomAInvisible && atomBInvisible)
                         return true;
-                    };
-                    final var startEnd = new Vector2f(end).sub(new Vector2f(start));
-                    final float dy = startEnd.y, dx = startEnd.x, length = startEnd.length();
-                    final BiFunction<Integer, Integer, GraphicalUtils.PixelPredicate> notCloseToAtomAndDot = (m,
-                                                                                                              b) -> notCloseToAtom
-                                                                                                                      .and((xt,
-                                                                                                                            yt,
-                                                                                                                            count) -> count %
-                                                                                                                                    m <
-                                                                                                                                    b);
-                    int addX = Math.round(dy / length * 2), addY = -Math.round(dx / length * 2);
-                    int addHX = Math.round(dy / length), addHY = -Math.round(dx / length);
-                    int colorA = colorForElement(atomA.element().element());
-                    int colorB = colorForElement(atomB.element().element());
-                    IntBinaryOperator color = (xp, yp) -> {
-                        final var d2a = Math.pow(xp - start.x, 2) + Math.pow(yp - start.y, 2);
-                        final var d2b = Math.pow(xp - end.x, 2) + Math.pow(yp - end.y, 2);
-                        return d2a < d2b ? colorA : colorB;
-                    };
-                    List<Vector2i> allTargets = new ArrayList<>();
-                    GraphicalUtils.plotLine(addX * 3 / 2, addY * 3 / 2, -addX * 3 / 2, -addY * 3 / 2,
-                            GraphicalUtils::alwaysDraw,
-                            (xp, yp) -> {
-                                allTargets.add(new Vector2i(xp / 2, yp / 2));
-                                allTargets.add(new Vector2i((xp + 1) / 2, yp / 2));
-                                allTargets.add(new Vector2i(xp / 2, (yp + 1) / 2));
-                                allTargets.add(new Vector2i((xp + 1) / 2, (yp + 1) / 2));
-                            });
-                    final var aboveEnd = new Vector2f(end).sub(new Vector2f(start)).perpendicular().normalize(2)
-                            .add(new Vector2f(end));
-                    List<Vector2i> above = new ArrayList<>();
-                    GraphicalUtils.plotLine(start.x, start.y, Math.round(aboveEnd.x), Math.round(aboveEnd.y),
-                            GraphicalUtils::alwaysDraw, (xp, yp) -> above.add(new Vector2i(xp, yp)));
-                    final var thickness = bond.totalThickness();
-                    final var starting = bond.centered() ? (thickness - 1) / 2f : (float) ((thickness - 1) / 2);
-                    var done = bond.lines().length > 0 && bond.lines()[0].thick ? 1 : 0;
-                    for (var i = 0; i < bond.lines().length; done += bond.lines()[i].thick ? 3 : 1, i++) {
-                        final var delta = done - starting;
-                        final var sX = Mth.floor(delta) * addX + (int) (Mth.frac(delta) * 2) * addHX;
-                        final var sY = Mth.floor(delta) * addY + (int) (Mth.frac(delta) * 2) * addHY;
-                        switch (bond.lines()[i]) {
-                            case SOLID -> GraphicalUtils.plotLine(start.x + sX, start.y + sY, end.x + sX, end.y + sY,
-                                    notCloseToAtom, color, guiGraphics);
-                            case DOTTED -> GraphicalUtils.plotLine(start.x + sX, start.y + sY, end.x + sX, end.y + sY,
-                                    notCloseToAtomAndDot.apply(2, 1), color, guiGraphics);
-                            case INWARD -> {
-                                for (int j = 0;; j++) {
-                                    if (j >= above.size()) break;
-                                    if (j % 3 != 0) continue;
-                                    final var abovePoint = above.get(j);
-                                    final var a = new Vector2f(abovePoint);
-                                    final var startA = new Vector2f(a).sub(new Vector2f(start));
-                                    final var b = new Vector2f(start).add(
-                                            new Vector2f(startEnd).mul(startEnd.dot(startA) / startEnd.dot(startEnd)))
-                                            .mul(2).sub(a);
-                                    final var belowPoint = new Vector2i(Math.round(b.x), Math.round(b.y));
-                                    GraphicalUtils.plotLine(abovePoint.x + sX, abovePoint.y + sY, belowPoint.x + sX,
-                                            belowPoint.y + sY, notCloseToAtom, color, guiGraphics);
-                                }
+                    Vector2ic t = new Vector2i(xt, yt);
+                    var diff = new Vector2i();
+                    start.sub(t, diff);
+                    diff.absolute();
+                    if (diff.x < atomAWidth * 2 / 3 && (!atomAInvisible && diff.y < font.lineHeight * 2 / 3))
+                        return false;
+                    if (atomAAbove >= 0 && diff.x < atomAAbove * 2 / 3 &&
+                            Math.abs((start.y - font.lineHeight - 1) - yt) < font.lineHeight * 2 / 3)
+                        return false;
+                    if (atomABelow >= 0 && diff.x < atomABelow * 2 / 3 &&
+                            Math.abs((start.y + font.lineHeight + 1) - yt) < font.lineHeight * 2 / 3)
+                        return false;
+                    if (atomARight >= 0 &&
+                            Math.abs((start.x + (atomAWidth + atomARight) / 2 + 1) - xt) < atomARight * 2 / 3 &&
+                            diff.y < font.lineHeight * 2 / 3)
+                        return false;
+                    if (atomALeft >= 0 && Math.abs((start.x - (atomAWidth + atomALeft) / 2 - 1) - xt) <
+                            atomALeft * 2 / 3 && diff.y < font.lineHeight * 2 / 3)
+                        return false;
+                    end.sub(t, diff);
+                    diff.absolute();
+                    if (diff.x < atomBWidth * 2 / 3 && (!atomBInvisible && diff.y < font.lineHeight * 2 / 3))
+                        return false;
+                    if (atomBAbove >= 0 && diff.x < atomBAbove * 2 / 3 &&
+                            Math.abs((end.y - font.lineHeight - 1) - yt) < font.lineHeight * 2 / 3)
+                        return false;
+                    if (atomBBelow >= 0 && diff.x < atomBBelow * 2 / 3 &&
+                            Math.abs((end.y + font.lineHeight + 1) - yt) < font.lineHeight * 2 / 3)
+                        return false;
+                    if (atomBRight >= 0 &&
+                            Math.abs((end.x + (atomBWidth + atomBRight) / 2 + 1) - xt) < atomBRight * 2 / 3 &&
+                            diff.y < font.lineHeight * 2 / 3)
+                        return false;
+                    if (atomBLeft >= 0 && Math.abs((end.x - (atomBWidth + atomBLeft) / 2 - 1) - xt) <
+                            atomBLeft * 2 / 3 && diff.y < font.lineHeight * 2 / 3)
+                        return false;
+                    return true;
+                };
+                final var startEnd = new Vector2f(end).sub(new Vector2f(start));
+                final float dy = startEnd.y, dx = startEnd.x, length = startEnd.length();
+                final BiFunction<Integer, Integer, GraphicalUtils.PixelPredicate> notCloseToAtomAndDot = (m,
+                                                                                                          b) -> notCloseToAtom
+                                                                                                                  .and((xt,
+                                                                                                                        yt,
+                                                                                                                        count) -> count %
+                                                                                                                                m <
+                                                                                                                                b);
+                int addX = Math.round(dy / length * 2), addY = -Math.round(dx / length * 2);
+                int addHX = Math.round(dy / length), addHY = -Math.round(dx / length);
+                int colorA = colorForElement(compiled.element(slotA).element());
+                int colorB = colorForElement(compiled.element(slotB).element());
+                IntBinaryOperator color = (xp, yp) -> {
+                    final var d2a = Math.pow(xp - start.x, 2) + Math.pow(yp - start.y, 2);
+                    final var d2b = Math.pow(xp - end.x, 2) + Math.pow(yp - end.y, 2);
+                    return d2a < d2b ? colorA : colorB;
+                };
+                List<Vector2i> allTargets = new ArrayList<>();
+                GraphicalUtils.plotLine(addX * 3 / 2, addY * 3 / 2, -addX * 3 / 2, -addY * 3 / 2,
+                        GraphicalUtils::alwaysDraw,
+                        (xp, yp) -> {
+                            allTargets.add(new Vector2i(xp / 2, yp / 2));
+                            allTargets.add(new Vector2i((xp + 1) / 2, yp / 2));
+                            allTargets.add(new Vector2i(xp / 2, (yp + 1) / 2));
+                            allTargets.add(new Vector2i((xp + 1) / 2, (yp + 1) / 2));
+                        });
+                final var aboveEnd = new Vector2f(end).sub(new Vector2f(start)).perpendicular().normalize(2)
+                        .add(new Vector2f(end));
+                List<Vector2i> above = new ArrayList<>();
+                GraphicalUtils.plotLine(start.x, start.y, Math.round(aboveEnd.x), Math.round(aboveEnd.y),
+                        GraphicalUtils::alwaysDraw, (xp, yp) -> above.add(new Vector2i(xp, yp)));
+                final var thickness = bond.totalThickness();
+                final var starting = bond.centered() ? (thickness - 1) / 2f : (float) ((thickness - 1) / 2);
+                var done = bond.lines().length > 0 && bond.lines()[0].thick ? 1 : 0;
+                for (var i = 0; i < bond.lines().length; done += bond.lines()[i].thick ? 3 : 1, i++) {
+                    final var delta = done - starting;
+                    final var sX = Mth.floor(delta) * addX + (int) (Mth.frac(delta) * 2) * addHX;
+                    final var sY = Mth.floor(delta) * addY + (int) (Mth.frac(delta) * 2) * addHY;
+                    switch (bond.lines()[i]) {
+                        case SOLID -> GraphicalUtils.plotLine(start.x + sX, start.y + sY, end.x + sX, end.y + sY,
+                                notCloseToAtom, color, filler);
+                        case DOTTED -> GraphicalUtils.plotLine(start.x + sX, start.y + sY, end.x + sX, end.y + sY,
+                                notCloseToAtomAndDot.apply(2, 1), color, filler);
+                        case INWARD -> {
+                            for (int j = 0;; j++) {
+                                if (j >= above.size()) break;
+                                if (j % 3 != 0) continue;
+                                final var abovePoint = above.get(j);
+                                final var a = new Vector2f(abovePoint);
+                                final var startA = new Vector2f(a).sub(new Vector2f(start));
+                                final var b = new Vector2f(start).add(
+                                        new Vector2f(startEnd).mul(startEnd.dot(startA) / startEnd.dot(startEnd)))
+                                        .mul(2).sub(a);
+                                final var belowPoint = new Vector2i(Math.round(b.x), Math.round(b.y));
+                                GraphicalUtils.plotLine(abovePoint.x + sX, abovePoint.y + sY, belowPoint.x + sX,
+                                        belowPoint.y + sY, notCloseToAtom, color, filler);
                             }
-                            case OUTWARD -> {
-                                for (final var pair : allTargets) {
-                                    GraphicalUtils.plotLine(start.x + sX, start.y + sY, end.x + pair.x + sX,
-                                            end.y + pair.y + sY, notCloseToAtom, color, guiGraphics);
-                                }
+                        }
+                        case OUTWARD -> {
+                            for (final var pair : allTargets) {
+                                GraphicalUtils.plotLine(start.x + sX, start.y + sY, end.x + pair.x + sX,
+                                        end.y + pair.y + sY, notCloseToAtom, color, filler);
                             }
-                            case THICK -> {
-                                for (final var pair : allTargets) {
-                                    GraphicalUtils.plotLine(start.x + pair.x + sX, start.y + pair.y + sY,
-                                            end.x + pair.x + sX,
-                                            end.y + pair.y + sY, notCloseToAtom, color, guiGraphics);
-                                }
+                        }
+                        case THICK -> {
+                            for (final var pair : allTargets) {
+                                GraphicalUtils.plotLine(start.x + pair.x + sX, start.y + pair.y + sY,
+                                        end.x + pair.x + sX,
+                                        end.y + pair.y + sY, notCloseToAtom, color, filler);
                             }
                         }
                     }
-                } else if (elem instanceof Parens pp) {
-                    final var bounds = this.molecule.subset(pp.atoms()).boundsWithSize(
-                            toScaledProjectedFactory(font.lineHeight, -1),
-                            sizeOfAtomFactory(font.lineHeight));
-                    final var xyMin = floored(bounds.getFirst());
-                    xyMin.add(x, y);
-                    xyMin.add(-2, -1);
-                    final var xyMax = floored(bounds.getSecond());
-                    xyMax.add(x, y);
-                    xyMax.add(2, 1);
-                    guiGraphics.hLine(xyMin.x - 2, xyMin.x + 2, xyMin.y, defaultColor);
-                    guiGraphics.hLine(xyMin.x - 2, xyMin.x + 2, xyMax.y, defaultColor);
-                    guiGraphics.hLine(xyMax.x + 2, xyMax.x - 2, xyMin.y, defaultColor);
-                    guiGraphics.hLine(xyMax.x + 2, xyMax.x - 2, xyMax.y, defaultColor);
-                    guiGraphics.vLine(xyMin.x - 2, xyMin.y, xyMax.y, defaultColor);
-                    guiGraphics.vLine(xyMax.x + 2, xyMin.y, xyMax.y, defaultColor);
-                } else if (elem instanceof CircleTransformation ct) {
-                    final var centroid = Arrays.stream(ct.atoms())
-                            .mapToObj(idx -> this.molecule.getAtom(idx).orElseThrow().position())
-                            .reduce(new Vector3f(), (a, b) -> new Vector3f(a).add(new Vector3f(b)))
-                            .div(ct.atoms().length);
-                    for (int part = 0; part < 128; part++) {
-                        final var angle = (float) part / 64 * Mth.PI;
-                        final var u = new Vector3f(Mth.cos(angle), Mth.sin(angle), 0);
-                        final var p = u.mul(new Matrix3f(ct.A())).add(centroid.x, centroid.y, centroid.z);
-                        final var r = floored(toScaledProjectedFactory(font.lineHeight, -1).apply(p))
-                                .add(x, y + font.lineHeight / 2);
-                        guiGraphics.fill(r.x, r.y, r.x + 1, r.y + 1, defaultColor);
-                    }
-                    // final var cc = toScreen(font.lineHeight, centroid).add(x, y + font.lineHeight / 2);
-                    // guiGraphics.fill(cc.x, cc.y, cc.x + 1, cc.y + 1, DEBUG_COLOR);
                 }
             }
+            layout.updateGeometry(labels);
+            final var parensBounds = layout.parensBounds;
+            for (int pi = 0; pi < compiled.parens.length; pi++) {
+                final var xyMin = new Vector2i(Mth.floor(parensBounds[pi * 4]), Mth.floor(parensBounds[pi * 4 + 1]));
+                xyMin.add(x, y);
+                xyMin.add(-2, -1);
+                final var xyMax = new Vector2i(Mth.floor(parensBounds[pi * 4 + 2]), Mth.floor(parensBounds[pi * 4 + 3]));
+                xyMax.add(x, y);
+                xyMax.add(2, 1);
+                GraphicalUtils.drawHorizontalLine(xyMin.x - 2, xyMin.x + 2, xyMin.y, defaultColor, filler);
+                GraphicalUtils.drawHorizontalLine(xyMin.x - 2, xyMin.x + 2, xyMax.y, defaultColor, filler);
+                GraphicalUtils.drawHorizontalLine(xyMax.x + 2, xyMax.x - 2, xyMin.y, defaultColor, filler);
+                GraphicalUtils.drawHorizontalLine(xyMax.x + 2, xyMax.x - 2, xyMax.y, defaultColor, filler);
+                GraphicalUtils.drawVerticalLine(xyMin.x - 2, xyMin.y, xyMax.y, defaultColor, filler);
+                GraphicalUtils.drawVerticalLine(xyMax.x + 2, xyMin.y, xyMax.y, defaultColor, filler);
+            }
+            for (final var rects : layout.ringRects) {
+                for (int i = 0; i < rects.length; i += 4)
+                    filler.fill(rects[i] + x, rects[i + 1] + y, rects[i + 2] + x, rects[i + 3] + y, defaultColor);
+            }
         }
     }
 }
@@ -0,0 +1,117 @@
+package com.rubenverg.moldraw.component;
+
+import net.minecraft.util.FastColor;
+
+import com.mojang.blaze3d.platform.NativeImage;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.Arrays;
+
+/**
+ * 预先烘焙的像素行程：每个行程为 x, y, 长度, 颜色 四个 int，坐标相对于绘制原点。
+ * 重放时每个行程只需一次 {@code fill}。
+ */
+public final class PixelRuns {
+
+    public static final PixelRuns EMPTY = new PixelRuns(new int[0]);
+
+    private final int[] runs;
+    /** 所有行程的包围盒，右下边界不含 */
+    public final int minX, minY, maxX, maxY;
+
+    private PixelRuns(int[] runs) {
+        this.runs = runs;
+        int x0 = 0, y0 = 0, x1 = 0, y1 = 0;
+        for (int i = 0; i < runs.length; i += 4) {
+            if (i == 0) {
+                x0 = runs[0];
+                y0 = runs[1];
+                x1 = runs[0] + runs[2];
+                y1 = runs[1] + 1;
+            } else {
+                x0 = Math.min(x0, runs[i]);
+                y0 = Math.min(y0, runs[i + 1]);
+                x1 = Math.max(x1, runs[i] + runs[i + 2]);
+                y1 = Math.max(y1, runs[i + 1] + 1);
+            }
+        }
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+    }
+
+    /**
+     * 行程数量
+     */
+    public int size() {
+        return runs.length / 4;
+    }
+
+    public void draw(GraphicalUtils.Filler filler, int x, int y) {
+        for (int i = 0; i < runs.length; i += 4) {
+            final int x0 = x + runs[i], y0 = y + runs[i + 1];
+            filler.fill(x0, y0, x0 + runs[i + 2], y0 + 1, runs[i + 3]);
+        }
+    }
+
+    /**
+     * 把行程写入图像，行程坐标加上 (x, y) 后为图像坐标
+     */
+    public void paint(NativeImage image, int x, int y) {
+        for (int i = 0; i < runs.length; i += 4) {
+            final int color = runs[i + 3];
+            // NativeImage 使用 ABGR 顺序
+            final int abgr = FastColor.ABGR32.color(FastColor.ARGB32.alpha(color), FastColor.ARGB32.blue(color),
+                    FastColor.ARGB32.green(color), FastColor.ARGB32.red(color));
+            image.fillRect(x + runs[i], y + runs[i + 1], runs[i + 2], 1, abgr);
+        }
+    }
+
+    /**
+     * 录制任意填充调用，按像素“后写覆盖”合并后生成行程。只适用于不透明颜色。
+     */
+    public static final class Recorder implements GraphicalUtils.Filler {
+
+        // 偏移后 x, y 均为非负数，键按 (y, x) 排序即为扫描顺序
+        private static final int OFFSET = 1 << 30;
+
+        private final Long2IntOpenHashMap pixels = new Long2IntOpenHashMap();
+
+        @Override
+        public void fill(int x0, int y0, int x1, int y1, int color) {
+            final int minX = Math.min(x0, x1), maxX = Math.max(x0, x1);
+            final int minY = Math.min(y0, y1), maxY = Math.max(y0, y1);
+            for (int y = minY; y < maxY; y++) {
+                for (int x = minX; x < maxX; x++) {
+                    pixels.put(key(x, y), color);
+                }
+            }
+        }
+
+        private static long key(int x, int y) {
+            return (long) (y + OFFSET) << 32 | (x + OFFSET);
+        }
+
+        public PixelRuns build() {
+            if (pixels.isEmpty()) return EMPTY;
+            final var keys = pixels.keySet().toLongArray();
+            Arrays.sort(keys);
+            final var runs = new int[keys.length * 4];
+            int n = 0;
+            for (final var key : keys) {
+                final int x = (int) key - OFFSET, y = (int) (key >>> 32) - OFFSET;
+                final int color = pixels.get(key);
+                if (n > 0 && runs[n - 3] == y && runs[n - 4] + runs[n - 2] == x && runs[n - 1] == color) {
+                    runs[n - 2]++;
+                    continue;
+                }
+                runs[n++] = x;
+                runs[n++] = y;
+                runs[n++] = 1;
+                runs[n++] = color;
+            }
+            return new PixelRuns(Arrays.copyOf(runs, n));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.rubenverg.moldraw.component;
+
+import net.minecraft.client.gui.GuiGraphics;
+import net.minecraft.client.renderer.GameRenderer;
+import net.minecraft.util.FastColor;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.BufferUploader;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import org.joml.Matrix4f;
+
+/**
+ * 批量填充：把一个提示框图像的所有纯色矩形写入同一个顶点缓冲，{@link #end()} 时一次提交。
+ * 非托管状态下每次 {@link GuiGraphics#fill} 都会单独提交一次绘制，大分子和饼图会因此产生成千上万次绘制调用。
+ * 同一时刻只能有一个批次，只在渲染线程使用。
+ */
+public final class QuadBatch implements GraphicalUtils.Filler {
+
+    private static final BufferBuilder BUILDER = new BufferBuilder(256);
+
+    private final GuiGraphics graphics;
+    private final Matrix4f matrix;
+
+    private QuadBatch(GuiGraphics graphics, Matrix4f matrix) {
+        this.graphics = graphics;
+        this.matrix = matrix;
+    }
+
+    public static QuadBatch begin(GuiGraphics graphics) {
+        // 上一个批次因异常没有结束时丢弃其内容
+        if (BUILDER.building()) BUILDER.end().release();
+        BUILDER.begin(VertexFormat.Mode.QUADS, DefaultVertexFormat.POSITION_COLOR);
+        return new QuadBatch(graphics, graphics.pose().last().pose());
+    }
+
+    @Override
+    public void fill(int x0, int y0, int x1, int y1, int color) {
+        final int minX = Math.min(x0, x1), maxX = Math.max(x0, x1);
+        final int minY = Math.min(y0, y1), maxY = Math.max(y0, y1);
+        final int r = FastColor.ARGB32.red(color), g = FastColor.ARGB32.green(color),
+                b = FastColor.ARGB32.blue(color), a = FastColor.ARGB32.alpha(color);
+        BUILDER.vertex(matrix, minX, minY, 0).color(r, g, b, a).endVertex();
+        BUILDER.vertex(matrix, minX, maxY, 0).color(r, g, b, a).endVertex();
+        BUILDER.vertex(matrix, maxX, maxY, 0).color(r, g, b, a).endVertex();
+        BUILDER.vertex(matrix, maxX, minY, 0).color(r, g, b, a).endVertex();
+    }
+
+    public void end() {
+        // 立即绘制前先提交 GuiGraphics 中缓冲的文本等内容，保证绘制顺序与提交顺序一致
+        graphics.flush();
+        RenderSystem.setShader(GameRenderer::getPositionColorShader);
+        RenderSystem.enableBlend();
+        RenderSystem.defaultBlendFunc();
+        // 空缓冲在上传时直接释放，不会产生绘制
+        BufferUploader.drawWithShader(BUILDER.end());
+        RenderSystem.disableBlend();
+    }
+}
@@ -0,0 +1,26 @@
+package com.rubenverg.moldraw.component;
+
+/**
+ * 分子旋转动画的帧时钟：每帧开始时取一次时间并递增帧号，同一帧内所有提示框与原子使用同一时刻。
+ * 只在渲染线程访问。
+ */
+public final class SpinClock {
+
+    private static long frame;
+    private static long millis = System.currentTimeMillis();
+
+    private SpinClock() {}
+
+    public static void tick() {
+        frame++;
+        millis = System.currentTimeMillis();
+    }
+
+    public static long frame() {
+        return frame;
+    }
+
+    public static long millis() {
+        return millis;
+    }
+}
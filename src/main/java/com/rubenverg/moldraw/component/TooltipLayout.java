@@ -0,0 +1,235 @@
+package com.rubenverg.moldraw.component;
+
+import net.minecraft.util.Mth;
+
+import com.rubenverg.moldraw.MolDrawConfig;
+import com.rubenverg.moldraw.molecule.CompiledMolecule;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.joml.Vector2f;
+import org.joml.Vector2i;
+
+/**
+ * 分子提示框的布局：尺寸、边缘标志与坐标换算只取决于编译后的分子与比例，由 {@link MoleculeRenderCache} 按分子缓存，
+ * 提示框组件只是它的视图。同时保存每帧的原子投影与随标签排版重建的括号、环几何，同一分子的提示框共用。
+ * 只在渲染线程访问。
+ */
+public final class TooltipLayout {
+
+    public final CompiledMolecule compiled;
+    public final int scale;
+    public final Vector2i xySize;
+    public final Vector2f xyStart;
+    public final boolean atomAtTop;
+    public final boolean atomAtTopTop;
+    public final boolean atomAtBotBot;
+    public final boolean atomAtLefLef;
+    public final boolean parenAtLef;
+
+    private final Vector2f position = new Vector2f();
+    /** 每个旋转组本帧的旋转角余弦与正弦 */
+    private final float[] spinCos, spinSin;
+    /** 本帧投影并换算为屏幕坐标的原子位置，每槽位 x, y，文本与图像绘制共用 */
+    final float[] projected;
+    private long projectedFrame = -1;
+    private int projectedLineHeight = -1;
+    // 不随旋转变化的几何，随标签排版重建
+    private LabelLayout geometryLayout;
+    /** 各括号的屏幕包围盒，每个括号 minX, minY, maxX, maxY */
+    float[] parensBounds = new float[0];
+    /** 各环的轮廓，去重并合并为同行或同列的矩形，每个矩形 x0, y0, x1, y1，不含颜色 */
+    int[][] ringRects = new int[0][];
+
+    TooltipLayout(CompiledMolecule compiled, int scale) {
+        this.compiled = compiled;
+        this.scale = scale;
+        this.spinCos = new float[compiled.spinFrequencies.length];
+        this.spinSin = new float[compiled.spinFrequencies.length];
+        this.projected = new float[compiled.atomCount * 2];
+        final Vector2f diff = new Vector2f(compiled.maxX - compiled.minX, compiled.maxY - compiled.minY);
+        diff.mul(scale);
+        diff.ceil();
+        this.xySize = new Vector2i((int) diff.x, (int) diff.y);
+        this.xyStart = new Vector2f(compiled.minX, compiled.maxY);
+        boolean atomAtTop = false, atomAtTopTop = false, atomAtBotBot = false, atomAtLefLef = false,
+                parenAtLef = false;
+        for (int i = 0; i < compiled.atomCount; i++) {
+            final var visible = !compiled.invisible[i];
+            final var atTop = Math.abs(xyStart.y - compiled.y(i)) < 0.1;
+            final var atBot = Math.abs(compiled.minY - compiled.y(i)) < 0.1;
+            final var atLef = Math.abs(compiled.minX - compiled.x(i));
+            atomAtTop |= atTop && visible;
+            atomAtTopTop |= atTop && visible && compiled.attachment(i, CompiledMolecule.ABOVE) != null;
+            atomAtBotBot |= atBot && visible && compiled.attachment(i, CompiledMolecule.BELOW) != null;
+            atomAtLefLef |= atLef < 0.1 && visible && compiled.attachment(i, CompiledMolecule.LEFT) != null;
+            if (atLef <= 0.1 && !parenAtLef) {
+                for (final var parens : compiled.parens) {
+                    for (final var index : parens.atoms()) parenAtLef |= index == compiled.indices[i];
+                }
+            }
+        }
+        this.atomAtTop = atomAtTop;
+        this.atomAtTopTop = atomAtTopTop;
+        this.atomAtBotBot = atomAtBotBot;
+        this.atomAtLefLef = atomAtLefLef;
+        this.parenAtLef = parenAtLef;
+    }
+
+    public int width() {
+        return xySize.x + 32 + (atomAtLefLef ? 12 : 0) + (parenAtLef ? 6 : 0);
+    }
+
+    public int height() {
+        return xySize.y + 20 + (atomAtBotBot ? 10 : 0) + (atomAtTopTop ? 10 : 0);
+    }
+
+    /**
+     * 把分子坐标原地换算为相对提示框的屏幕坐标
+     */
+    Vector2f toScaled(Vector2f xy, int lineHeight) {
+        xy.sub(xyStart).mul(scale);
+        return xy.set(xy.x + 8 + (atomAtLefLef ? 12 : 0) + (parenAtLef ? 6 : 0),
+                -xy.y + (atomAtTopTop ? lineHeight * 3 / 2f : atomAtTop ? lineHeight / 2f : 3));
+    }
+
+    /**
+     * 按帧时钟投影所有原子：每个旋转组每帧只求一次旋转，同一帧内重复调用直接返回
+     */
+    void updateProjection(int lineHeight) {
+        final long frame = SpinClock.frame();
+        if (frame == projectedFrame && lineHeight == projectedLineHeight) return;
+        projectedFrame = frame;
+        projectedLineHeight = lineHeight;
+        final boolean spin = MolDrawConfig.INSTANCE.molecule.spinMolecules;
+        if (spin) {
+            final long millis = SpinClock.millis();
+            for (int g = 0; g < spinCos.length; g++) {
+                final var freq = 1000 /
+                        (compiled.spinFrequencies[g] * MolDrawConfig.INSTANCE.molecule.spinSpeedMultiplier);
+                final float angle = millis % (int) freq / freq * Mth.TWO_PI;
+                spinCos[g] = Mth.cos(angle);
+                spinSin[g] = Mth.sin(angle);
+            }
+        }
+        for (int slot = 0; slot < compiled.atomCount; slot++) {
+            float px = compiled.x(slot);
+            final int group = compiled.spinGroups[slot];
+            if (spin && group >= 0 && group < spinCos.length) {
+                // 绕 y 轴旋转，y 不变，屏幕上只用到 x 与 y
+                final float cx = compiled.spinCenters[group * 3], cz = compiled.spinCenters[group * 3 + 2];
+                px = spinCos[group] * (px - cx) + spinSin[group] * (compiled.z(slot) - cz) + cx;
+            }
+            toScaled(position.set(px, compiled.y(slot)), lineHeight);
+            projected[slot * 2] = position.x;
+            projected[slot * 2 + 1] = position.y;
+        }
+    }
+
+    Vector2i projectedSlot(int slot) {
+        return new Vector2i(Mth.floor(projected[slot * 2]), Mth.floor(projected[slot * 2 + 1]));
+    }
+
+    /**
+     * 重建括号包围盒与环轮廓，它们只取决于分子、比例与标签排版，文本与图像绘制共用
+     */
+    void updateGeometry(LabelLayout layout) {
+        if (geometryLayout == layout) return;
+        geometryLayout = layout;
+        parensBounds = computeParensBounds(layout);
+        ringRects = computeRingRects(layout.font.lineHeight);
+    }
+
+    /**
+     * 附加标签的宽度，没有该标签时为 -1
+     */
+    static int attachmentWidth(LabelLayout layout, int slot, int side) {
+        final int id = layout.labelId(slot, side);
+        return id == CompiledMolecule.NONE ? -1 : layout.width[id];
+    }
+
+    /**
+     * 各括号内原子连同标签的包围盒
+     */
+    private float[] computeParensBounds(LabelLayout layout) {
+        final int lineHeight = layout.font.lineHeight;
+        final var bounds = new float[compiled.parens.length * 4];
+        for (int pi = 0; pi < compiled.parens.length; pi++) {
+            final var slots = compiled.parensSlots[pi];
+            if (slots.length == 0) continue;
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY,
+                    maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            for (final int slot : slots) {
+                final float half = layout.width[compiled.elementIds[slot]] / 2f;
+                float x0 = half, x1 = half, y0 = 1, y1 = lineHeight + 1;
+                final int right = attachmentWidth(layout, slot, CompiledMolecule.RIGHT);
+                final int left = attachmentWidth(layout, slot, CompiledMolecule.LEFT);
+                final int above = attachmentWidth(layout, slot, CompiledMolecule.ABOVE);
+                final int below = attachmentWidth(layout, slot, CompiledMolecule.BELOW);
+                if (right >= 0) x1 += 1 + right;
+                if (left >= 0) x0 += 1 + left;
+                if (above >= 0) {
+                    y0 += 1 + lineHeight;
+                    x0 = Math.max(x0, above / 2f);
+                    x1 = Math.max(x1, above / 2f);
+                }
+                if (below >= 0) {
+                    y1 += 1 + lineHeight;
+                    x0 = Math.max(x0, below / 2f);
+                    x1 = Math.max(x1, below / 2f);
+                }
+                toScaled(position.set(compiled.x(slot), compiled.y(slot)), lineHeight);
+                minX = Math.min(minX, position.x - x0);
+                minY = Math.min(minY, position.y - y0);
+                maxX = Math.max(maxX, position.x + x1);
+                maxY = Math.max(maxY, position.y + y1);
+            }
+            bounds[pi * 4] = minX;
+            bounds[pi * 4 + 1] = minY;
+            bounds[pi * 4 + 2] = maxX;
+            bounds[pi * 4 + 3] = maxY;
+        }
+        return bounds;
+    }
+
+    /**
+     * 各环椭圆上 128 个采样点的像素，去重后按采样顺序合并为矩形，已包含半行高的竖直偏移
+     */
+    private int[][] computeRingRects(int lineHeight) {
+        final var rings = new int[compiled.circles.length][];
+        final var u = new Vector2f();
+        final var seen = new LongOpenHashSet();
+        final var rects = new IntArrayList();
+        final GraphicalUtils.Filler recorder = (x0, y0, x1, y1, color) -> {
+            rects.add(x0);
+            rects.add(y0);
+            rects.add(x1);
+            rects.add(y1);
+        };
+        for (int ci = 0; ci < compiled.circles.length; ci++) {
+            final var slots = compiled.circleSlots[ci];
+            rects.clear();
+            if (slots.length > 0) {
+                float cx = 0, cy = 0;
+                for (final var slot : slots) {
+                    cx += compiled.x(slot);
+                    cy += compiled.y(slot);
+                }
+                cx /= slots.length;
+                cy /= slots.length;
+                final var a = compiled.circles[ci].A();
+                seen.clear();
+                final var spans = new GraphicalUtils.SpanMerger((xp, yp) -> 0, recorder);
+                for (int part = 0; part < 128; part++) {
+                    final var angle = (float) part / 64 * Mth.PI;
+                    u.set(Mth.cos(angle), Mth.sin(angle)).mul(a).add(cx, cy);
+                    toScaled(position.set(u), lineHeight);
+                    final int px = Mth.floor(position.x), py = Mth.floor(position.y) + lineHeight / 2;
+                    if (seen.add((long) px << 32 | (py & 0xffffffffL))) spans.draw(px, py);
+                }
+                spans.flush();
+            }
+            rings[ci] = rects.toIntArray();
+        }
+        return rings;
+    }
+}
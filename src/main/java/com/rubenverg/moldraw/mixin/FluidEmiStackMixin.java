@@ -1,8 +1,6 @@
 package com.rubenverg.moldraw.mixin;
 
-import com.gregtechceu.gtceu.api.data.chemical.ChemicalHelper;
 import com.gregtechceu.gtceu.api.data.chemical.material.Material;
-import com.gregtechceu.gtceu.api.data.chemical.material.stack.MaterialStack;
 import com.gregtechceu.gtceu.utils.GTUtil;
 
 import net.minecraft.client.gui.screens.inventory.tooltip.ClientTextTooltip;
@@ -52,7 +50,7 @@ public class FluidEmiStackMixin {
                                                    OptionalInt idx, OptionalInt quantityIdx) {
         if (Objects.nonNull(material.getMaterialComponents()) && !material.getMaterialComponents().isEmpty() ||
                 material.isElement()) {
-            final var coloredFormula = MoleculeColorize.coloredFormula(new MaterialStack(material, 1), true);
+            final var coloredFormula = MoleculeColorize.coloredFormula(material);
 
             if (idx.isPresent())
                 list.set(idx.getAsInt(), ClientTooltipComponent.create(coloredFormula.getVisualOrderText()));
@@ -71,12 +69,14 @@ public class FluidEmiStackMixin {
                                          @Local(name = "list") List<ClientTooltipComponent> list) {
         if (!MolDrawConfig.INSTANCE.enabled) return;
 
-        final Material material = ChemicalHelper.getMaterial(fluid);
+        // 材料、分子与合金按流体缓存
+        final var decision = TooltipDecisions.forFluid(fluid, TooltipDecisions.expanded(GTUtil.isShiftDown()));
+        final Material material = decision.material;
         if (Objects.isNull(material)) return;
         if (Objects.isNull(material.getMaterialComponents())) return;
 
-        final var mol = MolDraw.getMolecule(material);
-        final var alloy = MolDraw.getAlloy(material);
+        final var mol = decision.molecule;
+        final var alloy = decision.alloy;
         final OptionalInt idx = IntStream.range(0, list.size())
                 .filter(i -> list.get(i) instanceof ClientTextTooltip ctt &&
                         moldraw$simpleGetText(((ClientTextTooltipMixin) ctt).getText()) // <-- 使用 mixin 访问器
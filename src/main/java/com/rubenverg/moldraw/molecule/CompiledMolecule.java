@@ -0,0 +1,202 @@
+package com.rubenverg.moldraw.molecule;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 分子的只读编译形式，供渲染热路径使用：原子数据展开为按槽位排列的并行基本类型数组，
+ * 键、括号与圆环的原子编号预先解析为槽位，渲染时无需复制列表或查找原子。
+ * <p>
+ * 槽位按原子在 {@link Molecule} 内容中出现的顺序分配；编号重复时与 {@link Molecule#getAtom} 一致，取第一个。
+ * 元素与四个方向的附加标签共用一张去重后的 {@link #labels} 表，数组中存放表下标，{@link #NONE} 表示无标签。
+ */
+public final class CompiledMolecule {
+
+    public static final int NONE = -1;
+    public static final int ABOVE = 0, RIGHT = 1, BELOW = 2, LEFT = 3;
+
+    public final int atomCount;
+    /** 每个槽位的原子编号 */
+    public final int[] indices;
+    /** x, y, z 交错排列，长度为 3 * atomCount */
+    public final float[] positions;
+    public final int[] spinGroups;
+    /** 主元素在 {@link #labels} 中的下标 */
+    public final int[] elementIds;
+    /** 附加标签下标，按 {@link #ABOVE}、{@link #RIGHT}、{@link #BELOW}、{@link #LEFT} 每槽位四个 */
+    public final int[] attachments;
+    public final boolean[] invisible;
+    public final Element.Counted[] labels;
+
+    public final Bond[] bonds;
+    /** 键两端原子的槽位，端点不存在时为 {@link #NONE} */
+    public final int[] bondA, bondB;
+    public final Parens[] parens;
+    public final int[][] parensSlots;
+    public final CircleTransformation[] circles;
+    public final int[][] circleSlots;
+
+    public final float[] spinFrequencies;
+    /** 每个旋转组的原子中心，x, y, z 交错排列 */
+    public final float[] spinCenters;
+
+    public final float minX, minY, maxX, maxY;
+
+    private final Atom[] atoms;
+    private final Int2IntOpenHashMap slotByIndex = new Int2IntOpenHashMap();
+
+    CompiledMolecule(Molecule molecule) {
+        slotByIndex.defaultReturnValue(NONE);
+        final List<Atom> atomList = new ArrayList<>();
+        final List<Bond> bondList = new ArrayList<>();
+        final List<Parens> parensList = new ArrayList<>();
+        final List<CircleTransformation> circleList = new ArrayList<>();
+        for (final var content : molecule.contentsView()) {
+            if (content instanceof Atom atom) {
+                if (!slotByIndex.containsKey(atom.index())) slotByIndex.put(atom.index(), atomList.size());
+                atomList.add(atom);
+            } else if (content instanceof Bond bond) bondList.add(bond);
+            else if (content instanceof Parens p) parensList.add(p);
+            else if (content instanceof CircleTransformation ct) circleList.add(ct);
+        }
+
+        atomCount = atomList.size();
+        atoms = atomList.toArray(Atom[]::new);
+        indices = new int[atomCount];
+        positions = new float[atomCount * 3];
+        spinGroups = new int[atomCount];
+        elementIds = new int[atomCount];
+        attachments = new int[atomCount * 4];
+        invisible = new boolean[atomCount];
+        final Object2IntMap<Element.Counted> labelIds = new Object2IntOpenHashMap<>();
+        labelIds.defaultReturnValue(NONE);
+        final List<Element.Counted> labelList = new ArrayList<>();
+        float x0 = 0, y0 = 0, x1 = 0, y1 = 0;
+        for (int i = 0; i < atomCount; i++) {
+            final var atom = atoms[i];
+            indices[i] = atom.index();
+            final var p = atom.position();
+            positions[i * 3] = p.x;
+            positions[i * 3 + 1] = p.y;
+            positions[i * 3 + 2] = p.z;
+            if (i == 0) {
+                x0 = x1 = p.x;
+                y0 = y1 = p.y;
+            } else {
+                x0 = Math.min(x0, p.x);
+                y0 = Math.min(y0, p.y);
+                x1 = Math.max(x1, p.x);
+                y1 = Math.max(y1, p.y);
+            }
+            spinGroups[i] = atom.spinGroup();
+            elementIds[i] = labelId(labelIds, labelList, atom.element());
+            invisible[i] = atom.isInvisible();
+            attachments[i * 4 + ABOVE] = atom.above().map(c -> labelId(labelIds, labelList, c)).orElse(NONE);
+            attachments[i * 4 + RIGHT] = atom.right().map(c -> labelId(labelIds, labelList, c)).orElse(NONE);
+            attachments[i * 4 + BELOW] = atom.below().map(c -> labelId(labelIds, labelList, c)).orElse(NONE);
+            attachments[i * 4 + LEFT] = atom.left().map(c -> labelId(labelIds, labelList, c)).orElse(NONE);
+        }
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+        labels = labelList.toArray(Element.Counted[]::new);
+
+        bonds = bondList.toArray(Bond[]::new);
+        bondA = new int[bonds.length];
+        bondB = new int[bonds.length];
+        for (int i = 0; i < bonds.length; i++) {
+            bondA[i] = slotOf(bonds[i].a());
+            bondB[i] = slotOf(bonds[i].b());
+        }
+        parens = parensList.toArray(Parens[]::new);
+        parensSlots = new int[parens.length][];
+        for (int i = 0; i < parens.length; i++) parensSlots[i] = slotsOf(parens[i].atoms());
+        circles = circleList.toArray(CircleTransformation[]::new);
+        circleSlots = new int[circles.length][];
+        for (int i = 0; i < circles.length; i++) circleSlots[i] = slotsOf(circles[i].atoms());
+
+        final int groupCount = molecule.spinGroups().size();
+        spinFrequencies = molecule.spinGroups().toFloatArray();
+        spinCenters = new float[groupCount * 3];
+        final var counts = new int[groupCount];
+        for (int i = 0; i < atomCount; i++) {
+            final int group = spinGroups[i];
+            if (group < 0 || group >= groupCount) continue;
+            spinCenters[group * 3] += positions[i * 3];
+            spinCenters[group * 3 + 1] += positions[i * 3 + 1];
+            spinCenters[group * 3 + 2] += positions[i * 3 + 2];
+            counts[group]++;
+        }
+        for (int g = 0; g < groupCount; g++) {
+            if (counts[g] == 0) continue;
+            spinCenters[g * 3] /= counts[g];
+            spinCenters[g * 3 + 1] /= counts[g];
+            spinCenters[g * 3 + 2] /= counts[g];
+        }
+    }
+
+    private static int labelId(Object2IntMap<Element.Counted> ids, List<Element.Counted> list,
+                               Element.Counted counted) {
+        final int id = ids.getInt(counted);
+        if (id != NONE) return id;
+        ids.put(counted, list.size());
+        list.add(counted);
+        return list.size() - 1;
+    }
+
+    /**
+     * 原子编号对应的槽位，不存在时为 {@link #NONE}
+     */
+    public int slotOf(int index) {
+        return slotByIndex.get(index);
+    }
+
+    /**
+     * 原子编号数组对应的槽位数组，跳过不存在的编号
+     */
+    public int[] slotsOf(int[] atomIndices) {
+        final var slots = new int[atomIndices.length];
+        int n = 0;
+        for (final var index : atomIndices) {
+            final int slot = slotOf(index);
+            if (slot != NONE) slots[n++] = slot;
+        }
+        return n == slots.length ? slots : Arrays.copyOf(slots, n);
+    }
+
+    public Atom atom(int slot) {
+        return atoms[slot];
+    }
+
+    public Element.Counted element(int slot) {
+        return labels[elementIds[slot]];
+    }
+
+    /**
+     * @param side {@link #ABOVE}、{@link #RIGHT}、{@link #BELOW} 或 {@link #LEFT}
+     * @return 附加标签，没有时为 {@code null}
+     */
+    public @Nullable Element.Counted attachment(int slot, int side) {
+        final int id = attachments[slot * 4 + side];
+        return id == NONE ? null : labels[id];
+    }
+
+    public float x(int slot) {
+        return positions[slot * 3];
+    }
+
+    public float y(int slot) {
+        return positions[slot * 3 + 1];
+    }
+
+    public float z(int slot) {
+        return positions[slot * 3 + 2];
+    }
+}
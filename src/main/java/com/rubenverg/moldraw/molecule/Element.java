@@ -6,6 +6,9 @@ import com.gregtechceu.gtceu.common.data.GTMaterials;
 
 import com.adsioho.gtm.compat.materialLookingup.MaterialHelper;
 import com.google.gson.*;
+import it.unimi.dsi.fastutil.objects.Reference2IntArrayMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -13,10 +16,15 @@ import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
 
 public class Element {
 
-    private static final Map<String, Element> elements = new HashMap<>();
+    // 分子在首次查询时才解码，可能与重载线程上的数据加载或计算线程同时注册元素
+    private static final Map<String, Element> elements = new ConcurrentHashMap<>();
+    // 材料到元素的反向索引（按引用比较），元素注册时维护，先注册的元素优先
+    private static final Map<Material, Element> byMaterial = new Reference2ObjectOpenHashMap<>();
 
     public final String symbol;
     public final boolean invisible;
@@ -24,6 +32,8 @@ public class Element {
     public final @NotNull Material material;
     public final List<Material> additionalMaterials;
     boolean standard;
+    // 按数量驻留的 Counted 实例
+    private final Map<Integer, Counted> counted = new ConcurrentHashMap<>();
 
     protected Element(String symbol, boolean invisible) {
         this.symbol = symbol;
@@ -31,7 +41,7 @@ public class Element {
         this.color = Color.NULL;
         this.standard = false;
         this.material = GTMaterials.NULL;
-        this.additionalMaterials = new ArrayList<>();
+        this.additionalMaterials = List.of();
     }
 
     protected Element(String symbol, boolean invisible, Color color, @Nullable Material material,
@@ -41,7 +51,8 @@ public class Element {
         this.color = color;
         this.standard = false;
         this.material = Objects.requireNonNullElse(material, GTMaterials.NULL);
-        this.additionalMaterials = new ArrayList<>(Arrays.asList(additionalMaterials));
+        // 注册后不可修改，保证与反向索引一致
+        this.additionalMaterials = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(additionalMaterials)));
     }
 
     public static Element create(String symbol) {
@@ -54,12 +65,22 @@ public class Element {
 
     public static Element create(String symbol, Color color, @Nullable Material material,
                                  Material... additionalMaterials) {
-        return elements.computeIfAbsent(symbol, s -> new Element(s, false, color, material, additionalMaterials));
+        return elements.computeIfAbsent(symbol,
+                s -> index(new Element(s, false, color, material, additionalMaterials)));
     }
 
     public static Element create(String symbol, boolean invisible, Color color, @Nullable Material material,
                                  Material... additionalMaterials) {
-        return elements.computeIfAbsent(symbol, s -> new Element(s, invisible, color, material, additionalMaterials));
+        return elements.computeIfAbsent(symbol,
+                s -> index(new Element(s, invisible, color, material, additionalMaterials)));
+    }
+
+    private static Element index(Element element) {
+        synchronized (byMaterial) {
+            if (!MaterialHelper.isNull(element.material)) byMaterial.putIfAbsent(element.material, element);
+            for (final var additional : element.additionalMaterials) byMaterial.putIfAbsent(additional, element);
+        }
+        return element;
     }
 
     private static Element createStandard(String symbol, Integer color, Material material,
@@ -73,10 +94,9 @@ public class Element {
     }
 
     public static Optional<Element> forMaterial(Material material) {
-        for (final var e : elements.values())
-            if (e.material.equals(material) || e.additionalMaterials.stream().anyMatch(mat -> mat.equals(material)))
-                return Optional.of(e);
-        return Optional.empty();
+        synchronized (byMaterial) {
+            return Optional.ofNullable(byMaterial.get(material));
+        }
     }
 
     public Element posIon() {
@@ -228,8 +248,11 @@ public class Element {
         return count(1);
     }
 
+    /**
+     * 驻留的带数量标签：相同元素与数量总是返回同一个实例
+     */
     public Counted count(int count) {
-        return new Counted(this, count);
+        return counted.computeIfAbsent(count, c -> new Counted(this, c));
     }
 
     public static class Json implements JsonSerializer<Element>, JsonDeserializer<Element> {
@@ -324,16 +347,82 @@ public class Element {
         }
     }
 
-    public record Counted(Element element, int count) {
+    /**
+     * 带数量的元素标签，通过 {@link Element#count} 驻留。显示字符串在创建时生成，
+     * 并按字体缓存测量的宽度，字体交替使用时互不覆盖。
+     */
+    public static final class Counted {
+
+        // 同时使用的字体很少，超出后整体清空
+        private static final int MAX_FONTS = 4;
+
+        // 资源重载后字形宽度可能变化，递增此值使所有缓存的宽度失效
+        private static volatile int widthGeneration;
+
+        private final Element element;
+        private final int count;
+        private final String text;
+        // 按字体实例缓存的宽度，访问时以自身加锁
+        private final Reference2IntMap<Object> widths = new Reference2IntArrayMap<>(1);
+        private int widthsGeneration;
+
+        private Counted(Element element, int count) {
+            this.element = element;
+            this.count = count;
+            if (count == 1) this.text = element.symbol;
+            else {
+                final var builder = new StringBuilder(element.symbol);
+                for (final var ch : Integer.toString(count).getBytes(StandardCharsets.UTF_8)) {
+                    builder.appendCodePoint(ch + '₀' - '0');
+                }
+                this.text = builder.toString();
+            }
+        }
+
+        public Element element() {
+            return element;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        /**
+         * 在给定字体下的显示宽度。字体以 {@link Object} 传入，避免通用代码引用客户端类。
+         */
+        public int width(Object font, ToIntFunction<String> measure) {
+            final int generation = widthGeneration;
+            synchronized (widths) {
+                if (widthsGeneration != generation) {
+                    widths.clear();
+                    widthsGeneration = generation;
+                }
+                if (widths.containsKey(font)) return widths.getInt(font);
+                final int width = measure.applyAsInt(text);
+                if (widths.size() >= MAX_FONTS) widths.clear();
+                widths.put(font, width);
+                return width;
+            }
+        }
+
+        public static void invalidateWidths() {
+            widthGeneration++;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            return o instanceof Counted that && this.element == that.element && this.count == that.count;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * element.hashCode() + count;
+        }
 
         @Override
         public @NotNull String toString() {
-            if (count == 1) return element.symbol;
-            final var builder = new StringBuilder(element.symbol);
-            for (final var ch : Integer.toString(count).getBytes(StandardCharsets.UTF_8)) {
-                builder.appendCodePoint(ch + '₀' - '0');
-            }
-            return builder.toString();
+            return text;
         }
 
         public static class Json implements JsonSerializer<Counted>, JsonDeserializer<Counted> {
@@ -5,10 +5,9 @@ import com.mojang.datafixers.util.Pair;
 import com.rubenverg.moldraw.MolDraw;
 import it.unimi.dsi.fastutil.floats.FloatArrayList;
 import it.unimi.dsi.fastutil.floats.FloatList;
-import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
 import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.experimental.Accessors;
 import org.jetbrains.annotations.Nullable;
 import org.joml.*;
@@ -16,7 +15,6 @@ import org.joml.*;
 import java.lang.Math;
 import java.lang.reflect.Type;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.IntUnaryOperator;
 import java.util.stream.Collectors;
@@ -29,11 +27,18 @@ public class Molecule {
     @Getter
     private final Matrix3d transformation = new Matrix3d();
     @Getter
-    @Setter
     private FloatList spinGroups = new FloatArrayList();
+    // 首次渲染时编译，任何修改都会使其失效
+    private @Nullable CompiledMolecule compiled;
 
     public Molecule() {}
 
+    public Molecule spinGroups(FloatList spinGroups) {
+        this.spinGroups = spinGroups;
+        this.compiled = null;
+        return this;
+    }
+
     public Molecule transformation(Matrix2dc matrix) {
         matrix.get(this.transformation);
         return this;
@@ -51,11 +56,13 @@ public class Molecule {
 
     public Molecule add(MoleculeElement<?> elem) {
         this.contents.add(elem);
+        this.compiled = null;
         return this;
     }
 
     public Molecule addAll(Collection<MoleculeElement<?>> elems) {
         this.contents.addAll(elems);
+        this.compiled = null;
         return this;
     }
 
@@ -83,9 +90,8 @@ public class Molecule {
                          int spinGroup) {
         final var xyz = new Vector3f(abc);
         xyz.mul(this.transformation);
-        this.contents.add(new Atom(++atomIndex, element, Optional.ofNullable(above), Optional.ofNullable(right),
+        return add(new Atom(++atomIndex, element, Optional.ofNullable(above), Optional.ofNullable(right),
                 Optional.ofNullable(below), Optional.ofNullable(left), xyz, spinGroup));
-        return this;
     }
 
     public Molecule atom(Element.Counted element, @Nullable Element.Counted above, @Nullable Element.Counted right,
@@ -136,8 +142,7 @@ public class Molecule {
     }
 
     public Molecule bond(int a, int b, boolean centered, Bond.Line... lines) {
-        this.contents.add(new Bond(a, b, centered, lines));
-        return this;
+        return add(new Bond(a, b, centered, lines));
     }
 
     public Molecule bond(int a, int b, Bond.Line... lines) {
@@ -152,18 +157,31 @@ public class Molecule {
         return this.contents.stream().toList();
     }
 
+    List<MoleculeElement<?>> contentsView() {
+        return this.contents;
+    }
+
+    public CompiledMolecule compiled() {
+        var result = this.compiled;
+        if (result == null) this.compiled = result = new CompiledMolecule(this);
+        return result;
+    }
+
     public List<Atom> atoms() {
         return this.contents.stream().filter(elem -> elem instanceof Atom).map(elem -> (Atom) elem).toList();
     }
 
     public Optional<Atom> getAtom(int index) {
-        return atoms().stream().filter(atom -> atom.index() == index).findFirst();
+        final var compiled = compiled();
+        final int slot = compiled.slotOf(index);
+        return slot == CompiledMolecule.NONE ? Optional.empty() : Optional.of(compiled.atom(slot));
     }
 
     public Molecule affine(Matrix4x3fc transformation) {
         for (final var atom : atoms()) {
             atom.position().mulPosition(transformation);
         }
+        this.compiled = null;
         return this;
     }
 
@@ -185,30 +203,32 @@ public class Molecule {
 
     public Molecule subset(int... atomIndices) {
         final var result = new Molecule();
-        AtomicInteger atomCount = new AtomicInteger(-1);
-        final Int2IntMap numbersMapping = new Int2IntArrayMap();
+        int bound = 0;
+        for (final var atom : atoms()) bound = Math.max(bound, atom.index() + 1);
+        final var members = new BitSet(bound);
+        // 不存在的原子编号不会匹配任何元素，直接忽略
+        for (final var index : atomIndices) if (index >= 0 && index < bound) members.set(index);
+        final Int2IntMap numbersMapping = new Int2IntOpenHashMap();
+        numbersMapping.defaultReturnValue(-1);
+        int atomCount = -1;
+        outer:
         for (final var elem : this.contents) {
             final var oldIndices = elem.coveredAtoms();
-            if (Arrays.stream(oldIndices)
-                    .allMatch(index -> Arrays.stream(atomIndices).anyMatch(atomIndex -> atomIndex == index))) {
-                result.add(elem.replaceInOrder(Arrays.stream(oldIndices)
-                        .map(index -> numbersMapping.computeIfAbsent(index, (_i) -> atomCount.incrementAndGet()))
-                        .toArray()));
+            for (final var index : oldIndices) if (index < 0 || !members.get(index)) continue outer;
+            final var newIndices = new int[oldIndices.length];
+            for (int i = 0; i < oldIndices.length; i++) {
+                int mapped = numbersMapping.get(oldIndices[i]);
+                if (mapped < 0) numbersMapping.put(oldIndices[i], mapped = ++atomCount);
+                newIndices[i] = mapped;
             }
+            result.add(elem.replaceInOrder(newIndices));
         }
         return result;
     }
 
     public Pair<Vector2f, Vector2f> bounds() {
-        final var atoms = atoms();
-        if (atoms.isEmpty()) return new Pair<>(new Vector2f(), new Vector2f());
-        Vector2f min = new Vector2f(atoms.get(0).position().x, atoms.get(0).position().y),
-                max = new Vector2f(atoms.get(0).position().x, atoms.get(0).position().y);
-        for (final var atom : atoms) {
-            min.min(new Vector2f(atom.position().x, atom.position().y));
-            max.max(new Vector2f(atom.position().x, atom.position().y));
-        }
-        return new Pair<>(min, max);
+        final var compiled = compiled();
+        return new Pair<>(new Vector2f(compiled.minX, compiled.minY), new Vector2f(compiled.maxX, compiled.maxY));
     }
 
     public Pair<Vector2f, Vector2f> boundsWithSize(Function<Vector3f, Vector2f> translateCoordinates,
@@ -0,0 +1,341 @@
+package com.rubenverg.moldraw.molecule;
+
+import com.gregtechceu.gtceu.api.GTCEuAPI;
+
+import net.minecraft.resources.ResourceLocation;
+
+import com.adsioho.gtm.compat.materialLookingup.MaterialHelper;
+import com.rubenverg.moldraw.MolDraw;
+import com.rubenverg.moldraw.ResourceFingerprint;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix2f;
+import org.joml.Vector3f;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 数据生成时写出的紧凑二进制分子包，无需构建 Gson 树。条目表记录了每个分子的数据偏移，
+ * 客户端既可一次性顺序解码，也可按 ID 单独解码某个分子。
+ * <p>
+ * 格式：魔数、版本、字符串表（元素符号、材料 ID、括号上下标、分子 ID）、元素表、
+ * 条目表（分子 ID、数据生成写出的同名 JSON 的内容哈希与数据偏移），随后是按条目顺序排列的分子记录（原子坐标为 float，键为线型代码）。
+ */
+@SuppressWarnings("removal")
+public final class MoleculeBundle {
+
+    public static final ResourceLocation LOCATION = new ResourceLocation(MolDraw.MOD_ID, "molecule_bundle.bin");
+
+    private static final int MAGIC = 0x4d4f4c42; // "MOLB"
+    private static final int VERSION = 2;
+
+    private static final byte ATOM = 0, BOND = 1, PARENS = 2, CIRCLE = 3;
+    private static final byte COLOR_NULL = 0, COLOR_ALWAYS = 1, COLOR_OPTIONAL = 2;
+    private static final Bond.Line[] LINES = Bond.Line.values();
+
+    private final ByteBuffer data;
+    private final String[] strings;
+    private final Element[] elements;
+    private final Map<ResourceLocation, Integer> offsets;
+    private final Object2LongMap<ResourceLocation> sourceHashes;
+
+    private MoleculeBundle(ByteBuffer data, String[] strings, Element[] elements,
+                           Map<ResourceLocation, Integer> offsets, Object2LongMap<ResourceLocation> sourceHashes) {
+        this.data = data;
+        this.strings = strings;
+        this.elements = elements;
+        this.offsets = offsets;
+        this.sourceHashes = sourceHashes;
+    }
+
+    public Set<ResourceLocation> ids() {
+        return offsets.keySet();
+    }
+
+    /**
+     * 数据生成时与分子包一同写出的 {@code molecules/<path>.json} 的内容哈希，
+     * 与 {@link ResourceFingerprint#hash} 一致，用于识别与分子包重复的 JSON
+     */
+    public long sourceHash(ResourceLocation id) {
+        return sourceHashes.getLong(id);
+    }
+
+    public Map<ResourceLocation, Molecule> decodeAll() {
+        final Map<ResourceLocation, Molecule> result = new LinkedHashMap<>();
+        for (final var entry : offsets.entrySet()) {
+            result.put(entry.getKey(), decodeAt(entry.getValue()));
+        }
+        return result;
+    }
+
+    public @Nullable Molecule decode(ResourceLocation id) {
+        final var offset = offsets.get(id);
+        return offset == null ? null : decodeAt(offset);
+    }
+
+    private Molecule decodeAt(int offset) {
+        final var in = data.duplicate().position(offset);
+        final var molecule = new Molecule();
+        final int contentCount = readVarInt(in);
+        for (int i = 0; i < contentCount; i++) {
+            final byte type = in.get();
+            switch (type) {
+                case ATOM -> {
+                    final int index = readZigZag(in);
+                    final var element = readCounted(in);
+                    final byte mask = in.get();
+                    final var above = readLabel(in, mask, 1);
+                    final var right = readLabel(in, mask, 2);
+                    final var below = readLabel(in, mask, 4);
+                    final var left = readLabel(in, mask, 8);
+                    final var position = new Vector3f(in.getFloat(), in.getFloat(), in.getFloat());
+                    molecule.add(new Atom(index, element, above, right, below, left, position, readZigZag(in)));
+                }
+                case BOND -> {
+                    final int a = readZigZag(in), b = readZigZag(in);
+                    final boolean centered = in.get() != 0;
+                    final var lines = new Bond.Line[readVarInt(in)];
+                    for (int j = 0; j < lines.length; j++) lines[j] = LINES[in.get()];
+                    molecule.add(new Bond(a, b, centered, lines));
+                }
+                case PARENS -> {
+                    final var sub = strings[readVarInt(in)];
+                    final var sup = strings[readVarInt(in)];
+                    molecule.add(new Parens(sub, sup, readIndices(in)));
+                }
+                case CIRCLE -> {
+                    final var mat = new Matrix2f(in.getFloat(), in.getFloat(), in.getFloat(), in.getFloat());
+                    molecule.add(new CircleTransformation(mat, readIndices(in)));
+                }
+                default -> throw new IllegalStateException("Unknown molecule bundle record type " + type);
+            }
+        }
+        final int spinCount = readVarInt(in);
+        if (spinCount > 0) {
+            final var spin = new FloatArrayList(spinCount);
+            for (int i = 0; i < spinCount; i++) spin.add(in.getFloat());
+            molecule.spinGroups(spin);
+        }
+        return molecule;
+    }
+
+    private Element.Counted readCounted(ByteBuffer in) {
+        return elements[readVarInt(in)].count(readVarInt(in));
+    }
+
+    private Optional<Element.Counted> readLabel(ByteBuffer in, byte mask, int bit) {
+        return (mask & bit) != 0 ? Optional.of(readCounted(in)) : Optional.empty();
+    }
+
+    private static int[] readIndices(ByteBuffer in) {
+        final var indices = new int[readVarInt(in)];
+        for (int i = 0; i < indices.length; i++) indices[i] = readZigZag(in);
+        return indices;
+    }
+
+    public static MoleculeBundle read(byte[] bytes) throws IOException {
+        final var in = ByteBuffer.wrap(bytes);
+        if (in.getInt() != MAGIC) throw new IOException("Not a molecule bundle");
+        final int version = in.getShort();
+        if (version != VERSION) throw new IOException("Unsupported molecule bundle version " + version);
+
+        final var strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            final int length = readVarInt(in);
+            strings[i] = new String(bytes, in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        }
+
+        final var elements = new Element[readVarInt(in)];
+        for (int i = 0; i < elements.length; i++) {
+            final var symbol = strings[readVarInt(in)];
+            final byte flags = in.get();
+            final byte colorType = in.get();
+            final Element.Color color = switch (colorType) {
+                case COLOR_ALWAYS -> new Element.Color.Always(in.getInt());
+                case COLOR_OPTIONAL -> new Element.Color.Optional(in.getInt());
+                default -> Element.Color.NULL;
+            };
+            final int materialIndex = readVarInt(in) - 1;
+            if ((flags & 1) != 0) {
+                elements[i] = Element.create(symbol);
+            } else {
+                elements[i] = Element.create(symbol, (flags & 2) != 0, color,
+                        materialIndex < 0 ? null : GTCEuAPI.materialManager.getMaterial(strings[materialIndex]));
+            }
+        }
+
+        final int entryCount = readVarInt(in);
+        final Map<ResourceLocation, Integer> offsets = new LinkedHashMap<>(entryCount * 2);
+        final Object2LongMap<ResourceLocation> sourceHashes = new Object2LongOpenHashMap<>(entryCount);
+        final var relative = new int[entryCount];
+        final var ids = new ResourceLocation[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            ids[i] = new ResourceLocation(strings[readVarInt(in)]);
+            sourceHashes.put(ids[i], in.getLong());
+            relative[i] = in.getInt();
+        }
+        final int dataStart = in.position();
+        for (int i = 0; i < entryCount; i++) offsets.put(ids[i], dataStart + relative[i]);
+        return new MoleculeBundle(ByteBuffer.wrap(bytes), strings, elements, offsets, sourceHashes);
+    }
+
+    public static byte[] write(Map<ResourceLocation, Molecule> molecules) throws IOException {
+        final Object2IntMap<String> strings = new Object2IntLinkedOpenHashMap<>();
+        final Object2IntMap<Element> elements = new Object2IntLinkedOpenHashMap<>();
+        strings.defaultReturnValue(-1);
+        elements.defaultReturnValue(-1);
+        final var sorted = new TreeMap<>(molecules);
+
+        final var records = new ByteArrayOutputStream();
+        final var out = new DataOutputStream(records);
+        final var relative = new int[sorted.size()];
+        int n = 0;
+        for (final var molecule : sorted.values()) {
+            relative[n++] = out.size();
+            final var contents = molecule.contents();
+            writeVarInt(out, contents.size());
+            for (final var content : contents) {
+                if (content instanceof Atom atom) {
+                    out.writeByte(ATOM);
+                    writeZigZag(out, atom.index());
+                    writeCounted(out, atom.element(), elements);
+                    out.writeByte((atom.above().isPresent() ? 1 : 0) | (atom.right().isPresent() ? 2 : 0) |
+                            (atom.below().isPresent() ? 4 : 0) | (atom.left().isPresent() ? 8 : 0));
+                    for (final var label : List.of(atom.above(), atom.right(), atom.below(), atom.left())) {
+                        if (label.isPresent()) writeCounted(out, label.get(), elements);
+                    }
+                    out.writeFloat(atom.position().x);
+                    out.writeFloat(atom.position().y);
+                    out.writeFloat(atom.position().z);
+                    writeZigZag(out, atom.spinGroup());
+                } else if (content instanceof Bond bond) {
+                    out.writeByte(BOND);
+                    writeZigZag(out, bond.a());
+                    writeZigZag(out, bond.b());
+                    out.writeByte(bond.centered() ? 1 : 0);
+                    writeVarInt(out, bond.lines().length);
+                    for (final var line : bond.lines()) out.writeByte(line.ordinal());
+                } else if (content instanceof Parens parens) {
+                    out.writeByte(PARENS);
+                    writeVarInt(out, intern(strings, parens.sub()));
+                    writeVarInt(out, intern(strings, parens.sup()));
+                    writeIndices(out, parens.atoms());
+                } else if (content instanceof CircleTransformation ct) {
+                    out.writeByte(CIRCLE);
+                    out.writeFloat(ct.A().m00());
+                    out.writeFloat(ct.A().m01());
+                    out.writeFloat(ct.A().m10());
+                    out.writeFloat(ct.A().m11());
+                    writeIndices(out, ct.atoms());
+                } else {
+                    throw new IOException("Cannot bundle molecule content " + content);
+                }
+            }
+            writeVarInt(out, molecule.spinGroups().size());
+            for (int i = 0; i < molecule.spinGroups().size(); i++) out.writeFloat(molecule.spinGroups().getFloat(i));
+        }
+
+        // 元素表引用的字符串需要在写出字符串表之前全部登记
+        final var elementTable = new ByteArrayOutputStream();
+        final var elementOut = new DataOutputStream(elementTable);
+        writeVarInt(elementOut, elements.size());
+        for (final var element : elements.keySet()) {
+            writeVarInt(elementOut, intern(strings, element.symbol));
+            elementOut.writeByte((element.standard ? 1 : 0) | (element.invisible ? 2 : 0));
+            if (element.color instanceof Element.Color.Always always) {
+                elementOut.writeByte(COLOR_ALWAYS);
+                elementOut.writeInt(always.color());
+            } else if (element.color instanceof Element.Color.Optional optional) {
+                elementOut.writeByte(COLOR_OPTIONAL);
+                elementOut.writeInt(optional.color());
+            } else {
+                elementOut.writeByte(COLOR_NULL);
+            }
+            writeVarInt(elementOut, MaterialHelper.isNull(element.material) ? 0 :
+                    intern(strings, element.material.getResourceLocation().toString()) + 1);
+        }
+        final var entryTable = new ByteArrayOutputStream();
+        final var entryOut = new DataOutputStream(entryTable);
+        writeVarInt(entryOut, sorted.size());
+        n = 0;
+        for (final var entry : sorted.entrySet()) {
+            writeVarInt(entryOut, intern(strings, entry.getKey().toString()));
+            // 与数据生成写出的 JSON 字节相同
+            final var json = MolDraw.gson.toJson(entry.getValue(), Molecule.class);
+            entryOut.writeLong(ResourceFingerprint.hash(json.getBytes(StandardCharsets.UTF_8)));
+            entryOut.writeInt(relative[n++]);
+        }
+
+        final var bundle = new ByteArrayOutputStream();
+        final var bundleOut = new DataOutputStream(bundle);
+        bundleOut.writeInt(MAGIC);
+        bundleOut.writeShort(VERSION);
+        writeVarInt(bundleOut, strings.size());
+        for (final var string : strings.keySet()) {
+            final var utf8 = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bundleOut, utf8.length);
+            bundleOut.write(utf8);
+        }
+        elementTable.writeTo(bundleOut);
+        entryTable.writeTo(bundleOut);
+        records.writeTo(bundleOut);
+        bundleOut.flush();
+        return bundle.toByteArray();
+    }
+
+    private static <T> int intern(Object2IntMap<T> table, T value) {
+        final int index = table.getInt(value);
+        if (index >= 0) return index;
+        table.put(value, table.size());
+        return table.size() - 1;
+    }
+
+    private static void writeCounted(DataOutputStream out, Element.Counted counted,
+                                     Object2IntMap<Element> elements) throws IOException {
+        writeVarInt(out, intern(elements, counted.element()));
+        writeVarInt(out, counted.count());
+    }
+
+    private static void writeIndices(DataOutputStream out, int[] indices) throws IOException {
+        writeVarInt(out, indices.length);
+        for (final var index : indices) writeZigZag(out, index);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static void writeZigZag(DataOutputStream out, int value) throws IOException {
+        writeVarInt(out, (value << 1) ^ (value >> 31));
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0, shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static int readZigZag(ByteBuffer in) {
+        final int raw = readVarInt(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+}
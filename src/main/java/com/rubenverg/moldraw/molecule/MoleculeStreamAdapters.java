@@ -0,0 +1,388 @@
+package com.rubenverg.moldraw.molecule;
+
+import com.gregtechceu.gtceu.api.GTCEuAPI;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.rubenverg.moldraw.MolDraw;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.floats.FloatList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.Nullable;
+import org.joml.Matrix2f;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 分子 JSON 的流式读取器：直接从 {@link JsonReader} 构建模型，不生成中间的 JSON 树。
+ * 写出仍委托给各类的树形 {@code Json} 序列化器，因此必须在它们之后注册。
+ * <p>
+ * 数据生成的 JSON 把 {@code type} 写在每个内容对象的末尾，所以内容对象的字段先读入一个可复用的
+ * {@link ContentFields}，读完整个对象后再按类型构建。兼容旧的 {@code bond_type} 键类型与 {@code u}/{@code v} 坐标。
+ */
+public final class MoleculeStreamAdapters implements TypeAdapterFactory {
+
+    public static final MoleculeStreamAdapters INSTANCE = new MoleculeStreamAdapters();
+
+    private MoleculeStreamAdapters() {}
+
+    @FunctionalInterface
+    private interface Reader<T> {
+
+        T read(JsonReader in) throws IOException;
+    }
+
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        final Class<?> raw = type.getRawType();
+        final Reader<?> reader;
+        if (raw == Molecule.class) reader = MoleculeStreamAdapters::readMolecule;
+        else if (raw == Atom.class) reader = in -> new ContentFields().read(in).toAtom();
+        else if (raw == Bond.class) reader = in -> new ContentFields().read(in).toBond();
+        else if (raw == Parens.class) reader = in -> new ContentFields().read(in).toParens();
+        else if (raw == CircleTransformation.class) reader = in -> new ContentFields().read(in).toCircle();
+        else return null;
+        final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+        return new TypeAdapter<>() {
+
+            @Override
+            public void write(JsonWriter out, T value) throws IOException {
+                delegate.write(out, value);
+            }
+
+            @Override
+            public T read(JsonReader in) throws IOException {
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    return null;
+                }
+                return (T) reader.read(in);
+            }
+        };
+    }
+
+    private static Molecule readMolecule(JsonReader in) throws IOException {
+        expectObject(in, "Molecule JSON must be an object");
+        final var molecule = new Molecule();
+        final var fields = new ContentFields();
+        boolean hasContents = false;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "contents" -> {
+                    hasContents = true;
+                    in.beginArray();
+                    while (in.hasNext()) {
+                        expectObject(in, "Molecule JSON contents must be objects");
+                        final var content = fields.read(in).toContent();
+                        if (content != null) molecule.add(content);
+                    }
+                    in.endArray();
+                }
+                case "spin" -> {
+                    final var spin = readSpin(in);
+                    if (spin != null) molecule.spinGroups(spin);
+                }
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        if (!hasContents) throw new JsonParseException("Molecule JSON must contain contents property");
+        return molecule;
+    }
+
+    private static @Nullable FloatList readSpin(JsonReader in) throws IOException {
+        return switch (in.peek()) {
+            case BOOLEAN -> in.nextBoolean() ? FloatList.of(1 / 4f) : null;
+            case NUMBER -> FloatList.of((float) in.nextDouble());
+            case BEGIN_ARRAY -> {
+                final var spin = new FloatArrayList();
+                in.beginArray();
+                while (in.hasNext()) spin.add((float) in.nextDouble());
+                in.endArray();
+                yield spin;
+            }
+            // 与树形解析器一致，字符串值忽略
+            case STRING -> {
+                in.skipValue();
+                yield null;
+            }
+            default -> throw new JsonParseException("Invalid spin");
+        };
+    }
+
+    private static Element.Counted readCounted(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_ARRAY) return readElement(in).one();
+        in.beginArray();
+        final var element = readElement(in);
+        final int count = in.nextInt();
+        while (in.hasNext()) in.skipValue();
+        in.endArray();
+        return element.count(count);
+    }
+
+    private static Element readElement(JsonReader in) throws IOException {
+        final var token = in.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) return Element.create(in.nextString());
+        if (token != JsonToken.BEGIN_OBJECT) throw new JsonParseException("Invalid element JSON");
+        String symbol = null, material = null;
+        boolean invisible = false;
+        Element.Color color = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "symbol" -> symbol = in.nextString();
+                case "invisible" -> invisible = in.nextBoolean();
+                case "color" -> color = readColor(in);
+                case "material" -> material = in.nextString();
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        if (symbol == null) throw new JsonParseException("Element JSON must contain a symbol");
+        if (color == null) return Element.create(symbol, invisible);
+        return Element.create(symbol, invisible, color,
+                material != null ? GTCEuAPI.materialManager.getMaterial(material) : null);
+    }
+
+    private static Element.Color readColor(JsonReader in) throws IOException {
+        switch (in.peek()) {
+            case NULL -> {
+                in.nextNull();
+                return Element.Color.NULL;
+            }
+            case STRING, NUMBER -> {
+                return new Element.Color.Always(readColorValue(in));
+            }
+            case BEGIN_OBJECT -> {
+                Integer color = null;
+                boolean optional = true;
+                in.beginObject();
+                while (in.hasNext()) {
+                    switch (in.nextName()) {
+                        case "color" -> color = readColorValue(in);
+                        case "optional" -> optional = in.nextBoolean();
+                        default -> in.skipValue();
+                    }
+                }
+                in.endObject();
+                if (color == null) throw new JsonParseException("Element color JSON must contain a color");
+                return optional ? new Element.Color.Optional(color) : new Element.Color.Always(color);
+            }
+            default -> throw new JsonParseException("Invalid element color JSON");
+        }
+    }
+
+    private static int readColorValue(JsonReader in) throws IOException {
+        // 数值按 long 读取后截断，与树形解析器中 Number.intValue() 的行为一致
+        return in.peek() == JsonToken.STRING ? java.awt.Color.decode(in.nextString()).getRGB() | (0xff << 24) :
+                (int) in.nextLong();
+    }
+
+    private static void expectObject(JsonReader in, String message) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) throw new JsonParseException(message);
+    }
+
+    /**
+     * 一个分子内容对象中可能出现的全部字段，逐个对象复用
+     */
+    private static final class ContentFields {
+
+        private final IntArrayList ints = new IntArrayList();
+        private final List<Bond.Line> lineList = new ArrayList<>();
+        private final float[] matrix = new float[4];
+
+        @Nullable
+        String type, bondType, sub, sup;
+        @Nullable
+        Element.Counted element, above, right, below, left;
+        Bond.Line[] lines;
+        int[] atoms;
+        boolean hasIndex, hasA, hasB, hasX, hasY, hasU, hasV, centered;
+        int index, a, b, spinGroup, matrixMask;
+        float x, y, z, u, v;
+
+        ContentFields read(JsonReader in) throws IOException {
+            type = bondType = sub = sup = null;
+            element = above = right = below = left = null;
+            lines = null;
+            atoms = null;
+            hasIndex = hasA = hasB = hasX = hasY = hasU = hasV = centered = false;
+            spinGroup = matrixMask = 0;
+            z = 0;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "type" -> type = in.nextString();
+                    case "index" -> {
+                        index = in.nextInt();
+                        hasIndex = true;
+                    }
+                    case "element" -> element = readCounted(in);
+                    case "above" -> above = readCounted(in);
+                    case "right" -> right = readCounted(in);
+                    case "below" -> below = readCounted(in);
+                    case "left" -> left = readCounted(in);
+                    case "x" -> {
+                        x = (float) in.nextDouble();
+                        hasX = true;
+                    }
+                    case "y" -> {
+                        y = (float) in.nextDouble();
+                        hasY = true;
+                    }
+                    case "z" -> z = (float) in.nextDouble();
+                    case "u" -> {
+                        u = (float) in.nextDouble();
+                        hasU = true;
+                    }
+                    case "v" -> {
+                        v = (float) in.nextDouble();
+                        hasV = true;
+                    }
+                    case "spin_group", "spinGroup" -> spinGroup = in.nextInt();
+                    case "a" -> {
+                        a = in.nextInt();
+                        hasA = true;
+                    }
+                    case "b" -> {
+                        b = in.nextInt();
+                        hasB = true;
+                    }
+                    case "bond_type" -> bondType = in.nextString();
+                    case "centered" -> centered = in.nextBoolean();
+                    case "lines" -> lines = readLines(in);
+                    case "sub" -> sub = in.nextString();
+                    case "sup" -> sup = in.nextString();
+                    case "atoms" -> atoms = readInts(in);
+                    case "a00" -> readMatrix(in, 0);
+                    case "a01" -> readMatrix(in, 1);
+                    case "a10" -> readMatrix(in, 2);
+                    case "a11" -> readMatrix(in, 3);
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return this;
+        }
+
+        private void readMatrix(JsonReader in, int slot) throws IOException {
+            matrix[slot] = (float) in.nextDouble();
+            matrixMask |= 1 << slot;
+        }
+
+        private int[] readInts(JsonReader in) throws IOException {
+            ints.clear();
+            in.beginArray();
+            while (in.hasNext()) ints.add(in.nextInt());
+            in.endArray();
+            return ints.toIntArray();
+        }
+
+        private Bond.Line[] readLines(JsonReader in) throws IOException {
+            lineList.clear();
+            in.beginArray();
+            while (in.hasNext()) {
+                final var name = in.nextString();
+                Bond.Line found = null;
+                for (final var line : Bond.Line.values()) {
+                    if (line.jsonName.equals(name)) {
+                        found = line;
+                        break;
+                    }
+                }
+                if (found == null) throw new JsonParseException("Line type %s not recognized".formatted(name));
+                lineList.add(found);
+            }
+            in.endArray();
+            return lineList.toArray(Bond.Line[]::new);
+        }
+
+        @Nullable
+        MoleculeElement<?> toContent() {
+            if (type == null) throw new JsonParseException("Molecule JSON contents must have a type");
+            return switch (type) {
+                case "atom" -> toAtom();
+                case "bond" -> toBond();
+                case "parens" -> toParens();
+                case "circle" -> toCircle();
+                default -> {
+                    MolDraw.LOGGER.warn(
+                            "Unknown molecule content type '{}' in JSON, skipping. Supported types: atom, bond, parens, circle",
+                            type);
+                    yield null;
+                }
+            };
+        }
+
+        Atom toAtom() {
+            if (!hasIndex) throw new JsonParseException("Atom JSON must contain an index");
+            final var position = new Vector3f();
+            if (hasU && hasV) {
+                final var xy = new Vector2f(u, v);
+                xy.mul(MathUtils.UVtoXY);
+                position.set(xy, 0);
+            } else if (hasX && hasY) {
+                position.set(x, y, z);
+            } else {
+                throw new JsonParseException("Atom JSON must contain either u and v, or x and y (and possibly z)");
+            }
+            return new Atom(index, element != null ? element : Element.INVISIBLE.one(), Optional.ofNullable(above),
+                    Optional.ofNullable(right), Optional.ofNullable(below), Optional.ofNullable(left), position,
+                    spinGroup);
+        }
+
+        Bond toBond() {
+            if (!hasA || !hasB) throw new JsonParseException("Bond JSON must contain a and b");
+            if (bondType != null) {
+                MolDraw.LOGGER.warn("Molecule uses old bond format!");
+                return switch (bondType) {
+                    case "single" -> new Bond(a, b, false, Bond.SINGLE);
+                    case "double" -> new Bond(a, b, false, Bond.DOUBLE);
+                    case "double_centered" -> new Bond(a, b, true, Bond.DOUBLE);
+                    case "triple" -> new Bond(a, b, false, Bond.TRIPLE);
+                    case "outward" -> new Bond(a, b, false, Bond.Line.OUTWARD);
+                    case "inward" -> new Bond(a, b, false, Bond.Line.INWARD);
+                    case "thick" -> new Bond(a, b, false, Bond.Line.THICK);
+                    case "one_and_half" -> new Bond(a, b, false, Bond.Line.SOLID, Bond.Line.DOTTED);
+                    case "quadruple" -> new Bond(a, b, false, Bond.Line.SOLID, Bond.Line.SOLID, Bond.Line.SOLID,
+                            Bond.Line.SOLID);
+                    case "quadruple_centered" -> new Bond(a, b, true, Bond.Line.SOLID, Bond.Line.SOLID,
+                            Bond.Line.SOLID, Bond.Line.SOLID);
+                    case "dotted" -> new Bond(a, b, true, Bond.Line.DOTTED);
+                    default -> throw new JsonParseException(
+                            "Invalid bond type %s in old format.".formatted(bondType));
+                };
+            }
+            return new Bond(a, b, centered, lines != null ? lines : Bond.SINGLE);
+        }
+
+        Parens toParens() {
+            if (atoms == null) throw new JsonParseException("Parens JSON must have atoms property");
+            return new Parens(sub != null ? sub : "", sup != null ? sup : "", atoms);
+        }
+
+        CircleTransformation toCircle() {
+            final Matrix2f mat;
+            if (hasX && hasY) mat = new Matrix2f().identity().scale(x, y);
+            else if (matrixMask == 0b1111) mat = new Matrix2f(matrix[0], matrix[1], matrix[2], matrix[3]);
+            else throw new JsonParseException(
+                    "Circle transformation must have either x and y or a00, a01, a10, a11");
+            if (atoms == null) throw new JsonParseException("Circle transformation JSON must have atoms property");
+            return new CircleTransformation(mat, atoms);
+        }
+    }
+}